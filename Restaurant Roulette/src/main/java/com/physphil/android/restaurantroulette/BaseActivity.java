@@ -25,6 +25,8 @@ import android.graphics.Typeface;
 import android.support.v7.app.ActionBarActivity;
 import android.widget.TextView;
 
+import com.physphil.android.restaurantroulette.util.FontCache;
+
 /**
  * Created by pshadlyn on 3/4/14.
  */
@@ -42,7 +44,7 @@ public class BaseActivity extends ActionBarActivity {
             int titleId = getResources().getIdentifier("action_bar_title", "id", "android");
 
             TextView tv = (TextView) findViewById(titleId);
-            Typeface tf = Typeface.createFromAsset(getAssets(), font);
+            Typeface tf = FontCache.get(this, font);
 
             if(tv != null){
                 tv.setTypeface(tf);
@@ -21,16 +21,11 @@
 
 package com.physphil.android.restaurantroulette;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ListFragment;
-import android.support.v4.content.LocalBroadcastManager;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
@@ -38,10 +33,15 @@ import android.view.ViewGroup;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.physphil.android.restaurantroulette.data.AsyncDatabaseHelper;
 import com.physphil.android.restaurantroulette.data.DatabaseHelper;
+import com.physphil.android.restaurantroulette.models.RestaurantChange;
 import com.physphil.android.restaurantroulette.models.RestaurantHistory;
+import com.physphil.android.restaurantroulette.ui.ListDiff;
 import com.physphil.android.restaurantroulette.ui.RestaurantHistoryListAdapter;
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.EventBus;
+import com.physphil.android.restaurantroulette.util.FontCache;
 import com.physphil.android.restaurantroulette.util.Util;
 
 import java.util.List;
@@ -51,11 +51,9 @@ import java.util.List;
  */
 public class HistoryListFragment extends ListFragment {
 
-    public static final String ACTION_HISTORY_CLEARED = "com.physphil.android.restaurantroulette.ACTION_HISTORY_CLEARED";
     private static final String PREFS_SHOW_HELP_HISTORY = "show_help_history";
 
-    private List<RestaurantHistory> mHistory;
-    private DatabaseHelper mDatabaseHelper;
+    private AsyncDatabaseHelper mDatabase;
     private RestaurantHistoryListAdapter mAdapter;
 
     @Override
@@ -63,11 +61,11 @@ public class HistoryListFragment extends ListFragment {
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
 
-        mDatabaseHelper = DatabaseHelper.getInstance(getActivity());
+        mDatabase = new AsyncDatabaseHelper(getActivity());
+        mAdapter = new RestaurantHistoryListAdapter(getActivity(), mPageLoader);
         updateHistoryList();
 
-        LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getActivity());
-        lbm.registerReceiver(mLifetimeReceiver, new IntentFilter(RestaurantFragment.ACTION_RESTAURANT_UPDATED));
+        EventBus.getInstance().register(RestaurantChange.class, mChangeSubscriber);
     }
 
     @Override
@@ -75,7 +73,7 @@ public class HistoryListFragment extends ListFragment {
         View v = inflater.inflate(R.layout.fragment_history_list, container, false);
 
         // Set font for text when listview is empty
-        Typeface tf = Typeface.createFromAsset(getActivity().getAssets(), Constants.FONT_DEFAULT);
+        Typeface tf = FontCache.get(getActivity(), Constants.FONT_DEFAULT);
         ((TextView) v.findViewById(android.R.id.empty)).setTypeface(tf);
 
         return v;
@@ -86,44 +84,90 @@ public class HistoryListFragment extends ListFragment {
         super.onActivityCreated(savedInstanceState);
 
         getListView().setDivider(null);
+        setListAdapter(mAdapter);
     }
 
     @Override
     public void onResume() {
         super.onResume();
 
-        LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getActivity());
-        lbm.registerReceiver(mVisibleReceiver, new IntentFilter(NavigationDrawerFragment.ACTION_DRAWER_CLOSED));
-        lbm.registerReceiver(mVisibleReceiver, new IntentFilter(ACTION_HISTORY_CLEARED));
+        EventBus bus = EventBus.getInstance();
+        bus.register(NavigationDrawerFragment.DrawerClosedEvent.class, mDrawerClosedSubscriber);
+        bus.register(HistoryClearedEvent.class, mHistoryClearedSubscriber);
+
+        mAdapter.requestMissingPages();
     }
 
     @Override
     public void onPause() {
         super.onPause();
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mVisibleReceiver);
+        EventBus bus = EventBus.getInstance();
+        bus.unregister(NavigationDrawerFragment.DrawerClosedEvent.class, mDrawerClosedSubscriber);
+        bus.unregister(HistoryClearedEvent.class, mHistoryClearedSubscriber);
+        mDatabase.cancelReads();
+        mAdapter.cancelRequests();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mLifetimeReceiver);
+        mDatabase.cancelReads();
+
+        EventBus.getInstance().unregister(RestaurantChange.class, mChangeSubscriber);
     }
 
     @Override
     public void onListItemClick(ListView l, View v, int position, long id){
 
-        String restaurantId = mHistory.get(position).getRestaurantId();
-        startActivity(RestaurantActivity.getLaunchingIntent(getActivity(), restaurantId));
+        RestaurantHistory history = mAdapter.getItem(position);
+        if(history != null){
+            startActivity(RestaurantActivity.getLaunchingIntent(getActivity(), history.getRestaurantId()));
+        }
     }
 
+    /**
+     * Reload history list from the first page, dropping any page loads still in progress
+     */
     private void updateHistoryList(){
-        mHistory = mDatabaseHelper.getAllHistory();
-        mAdapter = new RestaurantHistoryListAdapter(getActivity(), mHistory);
-        setListAdapter(mAdapter);
+
+        mDatabase.cancelReads();
+        mAdapter.reset();
     }
 
+    /**
+     * Loads pages of history from database in the background and passes them to the adapter
+     */
+    private RestaurantHistoryListAdapter.PageLoader mPageLoader = new RestaurantHistoryListAdapter.PageLoader() {
+
+        @Override
+        public void loadPage(final int page, final RestaurantHistory after, final RestaurantHistory from, final RestaurantHistory until, final List<RestaurantHistory> current) {
+
+            mDatabase.read(new AsyncDatabaseHelper.Operation<ListDiff<RestaurantHistory>>() {
+
+                @Override
+                public ListDiff<RestaurantHistory> run(DatabaseHelper db) {
+
+                    List<RestaurantHistory> rows = db.getHistoryPage(after, from, until, until == null ? RestaurantHistoryListAdapter.PAGE_SIZE : 0);
+
+                    // Format dates here rather than as rows are bound on the UI thread
+                    for(RestaurantHistory row : rows){
+                        row.getDisplayDate();
+                    }
+
+                    return ListDiff.calculate(current, rows, RestaurantHistoryListAdapter.DIFF_CALLBACK);
+                }
+            }, new AsyncDatabaseHelper.Callback<ListDiff<RestaurantHistory>>() {
+
+                @Override
+                public void onResult(ListDiff<RestaurantHistory> diff) {
+                    mAdapter.setPage(page, diff);
+                }
+            });
+        }
+    };
+
     private void showHelpDialog(){
 
         Util.showHelpDialog(getActivity(), R.string.title_restaurant_history, R.string.dialog_restaurant_history_help, PREFS_SHOW_HELP_HISTORY);
@@ -143,39 +187,55 @@ public class HistoryListFragment extends ListFragment {
         }
     }
 
-    private BroadcastReceiver mLifetimeReceiver = new BroadcastReceiver(){
+    private EventBus.Subscriber<RestaurantChange> mChangeSubscriber = new EventBus.Subscriber<RestaurantChange>() {
 
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onEvent(RestaurantChange change) {
 
-            if(intent.getAction().equals(RestaurantFragment.ACTION_RESTAURANT_UPDATED)){
-
-                // Refresh history list to capture updated info
-                updateHistoryList();
-            }
+            // Patch shown history with updated info
+            mAdapter.applyChange(change);
         }
     };
 
-    private BroadcastReceiver mVisibleReceiver = new BroadcastReceiver() {
+    private EventBus.Subscriber<HistoryClearedEvent> mHistoryClearedSubscriber = new EventBus.Subscriber<HistoryClearedEvent>() {
+
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onEvent(HistoryClearedEvent event) {
 
-            if(intent.getAction().equals(ACTION_HISTORY_CLEARED)){
+            // Refresh adapter as history data has been cleared
+            mDatabase.cancelReads();
+            mAdapter.clear();
+        }
+    };
 
-                // Refresh adapter as history data has been cleared
-                mHistory.clear();
-                mAdapter.notifyDataSetChanged();
-            }
-            else if(intent.getAction().equals(NavigationDrawerFragment.ACTION_DRAWER_CLOSED)){
+    private EventBus.Subscriber<NavigationDrawerFragment.DrawerClosedEvent> mDrawerClosedSubscriber = new EventBus.Subscriber<NavigationDrawerFragment.DrawerClosedEvent>() {
+
+        @Override
+        public void onEvent(NavigationDrawerFragment.DrawerClosedEvent event) {
 
-                // Show help dialog if never been shown before
-                final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
-                boolean showHelp = prefs.getBoolean(PREFS_SHOW_HELP_HISTORY, true);
-                if(showHelp){
+            // Show help dialog if never been shown before
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
+            boolean showHelp = prefs.getBoolean(PREFS_SHOW_HELP_HISTORY, true);
+            if(showHelp){
 
-                    showHelpDialog();
-                }
+                showHelpDialog();
             }
         }
     };
+
+    /**
+     * Event posted once all restaurant history has been cleared
+     */
+    public static class HistoryClearedEvent {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof HistoryClearedEvent;
+        }
+
+        @Override
+        public int hashCode() {
+            return HistoryClearedEvent.class.hashCode();
+        }
+    }
 }
@@ -30,16 +30,17 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.ActionBar;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
 
+import com.physphil.android.restaurantroulette.data.AsyncDatabaseHelper;
 import com.physphil.android.restaurantroulette.data.DatabaseHelper;
 import com.physphil.android.restaurantroulette.ui.CustomFontDialogBuilder;
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.EventBus;
 
 public class MainActivity extends BaseActivity implements NavigationDrawerFragment.NavigationDrawerCallbacks {
 
@@ -175,9 +176,21 @@ public class MainActivity extends BaseActivity implements NavigationDrawerFragme
 
     private void clearRestaurantHistory(){
 
-        DatabaseHelper.getInstance(this).deleteRestaurantHistory();
-        Intent i = new Intent(HistoryListFragment.ACTION_HISTORY_CLEARED);
-        LocalBroadcastManager.getInstance(this).sendBroadcast(i);
+        // Notify fragments once history has been deleted
+        new AsyncDatabaseHelper(this).write(new AsyncDatabaseHelper.Operation<Void>() {
+
+            @Override
+            public Void run(DatabaseHelper db) {
+                db.deleteRestaurantHistory();
+                return null;
+            }
+        }, new AsyncDatabaseHelper.Callback<Void>() {
+
+            @Override
+            public void onResult(Void result) {
+                EventBus.getInstance().post(new HistoryListFragment.HistoryClearedEvent());
+            }
+        });
     }
 
     private void saveMenuSelection(int selection){
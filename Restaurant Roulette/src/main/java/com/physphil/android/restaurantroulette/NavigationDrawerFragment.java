@@ -22,14 +22,12 @@
 package com.physphil.android.restaurantroulette;
 
 import android.app.Activity;
-import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActionBarDrawerToggle;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.ActionBar;
@@ -44,6 +42,7 @@ import android.widget.AdapterView;
 import android.widget.ListView;
 
 import com.physphil.android.restaurantroulette.ui.CustomFontArrayAdapter;
+import com.physphil.android.restaurantroulette.util.EventBus;
 
 /**
  * Fragment used for managing interactions for and presentation of a navigation drawer.
@@ -52,10 +51,6 @@ import com.physphil.android.restaurantroulette.ui.CustomFontArrayAdapter;
  */
 public class NavigationDrawerFragment extends Fragment {
 
-    /**
-     * Broadcast indicating the navigation drawer has been closed.
-     */
-    public static final String ACTION_DRAWER_CLOSED = "com.physphil.android.restaurantroulette.ACTION_DRAWER_CLOSED";
 
     /**
      * Remember the position of the selected item.
@@ -191,7 +186,7 @@ public class NavigationDrawerFragment extends Fragment {
                 }
 
                 getActivity().supportInvalidateOptionsMenu(); // calls onPrepareOptionsMenu()
-                LocalBroadcastManager.getInstance(getActivity()).sendBroadcast(new Intent(ACTION_DRAWER_CLOSED));
+                EventBus.getInstance().post(new DrawerClosedEvent());
             }
 
             @Override
@@ -317,4 +312,20 @@ public class NavigationDrawerFragment extends Fragment {
          */
         void onNavigationDrawerItemSelected(int position);
     }
+
+    /**
+     * Event posted when the navigation drawer has been closed
+     */
+    public static class DrawerClosedEvent {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DrawerClosedEvent;
+        }
+
+        @Override
+        public int hashCode() {
+            return DrawerClosedEvent.class.hashCode();
+        }
+    }
 }
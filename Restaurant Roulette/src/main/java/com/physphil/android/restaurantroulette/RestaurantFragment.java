@@ -22,17 +22,11 @@
 package com.physphil.android.restaurantroulette;
 
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.graphics.Typeface;
-import android.location.Location;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.LocalBroadcastManager;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -47,10 +41,15 @@ import android.widget.RatingBar;
 import android.widget.Spinner;
 import android.widget.TextView;
 
+import com.physphil.android.restaurantroulette.data.AsyncDatabaseHelper;
 import com.physphil.android.restaurantroulette.data.DatabaseHelper;
+import com.physphil.android.restaurantroulette.models.GenreRegistry;
 import com.physphil.android.restaurantroulette.models.Restaurant;
+import com.physphil.android.restaurantroulette.models.RestaurantChange;
 import com.physphil.android.restaurantroulette.ui.CustomFontArrayAdapter;
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.EventBus;
+import com.physphil.android.restaurantroulette.util.FontCache;
 import com.physphil.android.restaurantroulette.util.LocationHelper;
 import com.physphil.android.restaurantroulette.util.Util;
 
@@ -59,14 +58,14 @@ import com.physphil.android.restaurantroulette.util.Util;
  */
 public class RestaurantFragment extends Fragment {
 
-    public static final String ACTION_DELETE_RESTAURANT = "com.physphil.android.restaurantroulette.ACTION_DELETE_RESTAURANT";
-    public static final String ACTION_RESTAURANT_UPDATED = "com.physphil.android.restaurantroulette.ACTION_RESTAURANT_UPDATED";
     public static final String EXTRA_RESTAURANT_ID = "com.physphil.android.restaurantroulette.EXTRA_RESTAURANT_ID";
-    public static final String EXTRA_UPDATED = "com.physphil.android.restaurantroulette.EXTRA_UPDATED";
+    public static final String EXTRA_CHANGED_FIELDS = "com.physphil.android.restaurantroulette.EXTRA_CHANGED_FIELDS";
+    public static final String EXTRA_NEW = "com.physphil.android.restaurantroulette.EXTRA_NEW";
     private static final String PREFS_SHOW_HELP_RESTAURANT = "show_help_restaurant";
 
-    private DatabaseHelper mDatabaseHelper;
+    private AsyncDatabaseHelper mDatabase;
     private Restaurant mRestaurant;
+    private String mRestaurantId;
     private EditText etName;
     private Spinner spinnerGenre;
     private RatingBar rbUserRating;
@@ -77,9 +76,14 @@ public class RestaurantFragment extends Fragment {
     private LocationHelper mLocationHelper;
 
     /**
-     * Keeps track of if restaurant entry was modified by user
+     * Keeps track of which fields of restaurant entry were modified by user, as RestaurantChange FIELD_ flags
      */
-    private boolean mUpdated;
+    private int mChangedFields;
+
+    /**
+     * Set if restaurant hasn't been saved to database yet
+     */
+    private boolean mNew;
 
     public RestaurantFragment(){}
 
@@ -102,7 +106,7 @@ public class RestaurantFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState){
         View v = inflater.inflate(R.layout.fragment_restaurant, container, false);
 
-        mTf = Typeface.createFromAsset(getActivity().getAssets(), Constants.FONT_DEFAULT);
+        mTf = FontCache.get(getActivity(), Constants.FONT_DEFAULT);
 
         etName = (EditText) v.findViewById(R.id.restaurant_name);
         spinnerGenre = (Spinner) v.findViewById(R.id.spinner_restaurant_genre);
@@ -121,39 +125,39 @@ public class RestaurantFragment extends Fragment {
         super.onActivityCreated(savedInstanceState);
 
         setHasOptionsMenu(true);
-        mDatabaseHelper = DatabaseHelper.getInstance(getActivity());
+        mDatabase = new AsyncDatabaseHelper(getActivity());
         mLocationHelper = new LocationHelper(getActivity());
-        String id;
 
         if(savedInstanceState != null){
-            id = savedInstanceState.getString(EXTRA_RESTAURANT_ID);
-            mUpdated = savedInstanceState.getBoolean(EXTRA_UPDATED, false);
+            mRestaurantId = savedInstanceState.getString(EXTRA_RESTAURANT_ID);
+            mChangedFields = savedInstanceState.getInt(EXTRA_CHANGED_FIELDS, 0);
+            mNew = savedInstanceState.getBoolean(EXTRA_NEW, false);
         }
         else{
-            id = getArguments().getString(EXTRA_RESTAURANT_ID);
-            mUpdated = false;
+            mRestaurantId = getArguments().getString(EXTRA_RESTAURANT_ID);
+            mChangedFields = 0;
+            mNew = (mRestaurantId == null);
         }
 
-        // If a valid restaurant id from the db exists, populate views with restaurant info
-        if(id != null){
-
-            // Get existing object from database
-            mRestaurant = mDatabaseHelper.getRestaurantById(id);
-        }
-        else{
+        // If a valid restaurant id from the db exists, populate views with restaurant info once loaded in onResume
+        if(mRestaurantId == null){
 
             mRestaurant = new Restaurant();
+            mRestaurantId = mRestaurant.getRestaurantId();
+            initializeViewContent();
         }
-
-        initializeViewContent();
     }
 
     @Override
     public void onResume() {
         super.onResume();
 
-        LocalBroadcastManager.getInstance(getActivity()).registerReceiver(mReceiver,
-                new IntentFilter(LocationHelper.ACTION_LOCATION_RETRIEVED));
+        // Get existing object from database. Also reloads if a previous load was cancelled when fragment paused
+        if(mRestaurant == null){
+            loadRestaurant();
+        }
+
+        EventBus.getInstance().register(LocationHelper.LocationRetrievedEvent.class, mLocationSubscriber);
 
         final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
         boolean showHelp = prefs.getBoolean(PREFS_SHOW_HELP_RESTAURANT, true);
@@ -172,17 +176,33 @@ public class RestaurantFragment extends Fragment {
 //        mRestaurant.setNotes(etNotes.getText().toString());
 
         // Only save to db if entry was updated by user
-        if(mUpdated){
+        if(mChangedFields != 0){
+
+            // Save all entered restaurant info to db, then post the changes so views can patch their copies.
+            // Write and change use a copy, as the user may carry on editing mRestaurant before the write runs.
+            final Restaurant restaurant = new Restaurant(mRestaurant);
+            final RestaurantChange change = mNew ? RestaurantChange.inserted(restaurant) : RestaurantChange.updated(restaurant, mChangedFields);
+            mChangedFields = 0;
+            mNew = false;
 
-            // Save all entered restaurant info to db
-            mDatabaseHelper.addRestaurant(mRestaurant);
+            mDatabase.write(new AsyncDatabaseHelper.Operation<Void>() {
 
-            // Send broadcast to update listview
-            Intent i = new Intent(ACTION_RESTAURANT_UPDATED);
-            LocalBroadcastManager.getInstance(getActivity()).sendBroadcast(i);
+                @Override
+                public Void run(DatabaseHelper db) {
+                    db.addRestaurant(restaurant);
+                    return null;
+                }
+            }, new AsyncDatabaseHelper.Callback<Void>() {
+
+                @Override
+                public void onResult(Void result) {
+                    EventBus.getInstance().post(change);
+                }
+            });
         }
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mReceiver);
+        EventBus.getInstance().unregister(LocationHelper.LocationRetrievedEvent.class, mLocationSubscriber);
+        mDatabase.cancelReads();
     }
 
     @Override
@@ -190,8 +210,9 @@ public class RestaurantFragment extends Fragment {
         super.onSaveInstanceState(outState);
 
         // Save restaurant id for recreation
-        outState.putString(EXTRA_RESTAURANT_ID, mRestaurant.getRestaurantId());
-        outState.putBoolean(EXTRA_UPDATED, mUpdated);
+        outState.putString(EXTRA_RESTAURANT_ID, mRestaurantId);
+        outState.putInt(EXTRA_CHANGED_FIELDS, mChangedFields);
+        outState.putBoolean(EXTRA_NEW, mNew);
     }
 
     /**
@@ -213,6 +234,29 @@ public class RestaurantFragment extends Fragment {
         ((TextView) v.findViewById(R.id.restaurant_notes_text)).setTypeface(mTf);
     }
 
+    /**
+     * Load restaurant from database in the background, and populate views once loaded
+     */
+    private void loadRestaurant(){
+
+        mDatabase.read(new AsyncDatabaseHelper.Operation<Restaurant>() {
+
+            @Override
+            public Restaurant run(DatabaseHelper db) {
+                return db.getRestaurantById(mRestaurantId);
+            }
+        }, new AsyncDatabaseHelper.Callback<Restaurant>() {
+
+            @Override
+            public void onResult(Restaurant restaurant) {
+
+                mRestaurant = restaurant;
+                mRestaurantId = restaurant.getRestaurantId();
+                initializeViewContent();
+            }
+        });
+    }
+
     private void initializeViewContent(){
 
         etName.setText(mRestaurant.getName());
@@ -234,7 +278,7 @@ public class RestaurantFragment extends Fragment {
             public void onTextChanged(CharSequence s, int start, int before, int count) {
 
                 mRestaurant.setName(s.toString());
-                mUpdated = true;
+                mChangedFields |= RestaurantChange.FIELD_NAME;
                 Log.d("PS", "name changed");
             }
 
@@ -250,7 +294,7 @@ public class RestaurantFragment extends Fragment {
             public void onTextChanged(CharSequence s, int start, int before, int count) {
 
                 mRestaurant.setNotes(s.toString());
-                mUpdated = true;
+                mChangedFields |= RestaurantChange.FIELD_NOTES;
                 Log.d("PS", "notes changed");
             }
 
@@ -266,7 +310,7 @@ public class RestaurantFragment extends Fragment {
 
                 // Set new rating every time it changes
                 mRestaurant.setUserRating((int) rating);
-                mUpdated = true;
+                mChangedFields |= RestaurantChange.FIELD_USER_RATING;
                 Log.d("PS", "rating changed");
             }
         });
@@ -279,15 +323,15 @@ public class RestaurantFragment extends Fragment {
 
                 // Set new price level every time it changes
                 mRestaurant.setPriceLevel((int) rating);
-                mUpdated = true;
+                mChangedFields |= RestaurantChange.FIELD_PRICE_LEVEL;
                 Log.d("PS", "price changed");
             }
         });
 
         // Set spinner adapter and initialize.
-        String[] genres = getResources().getStringArray(R.array.genres);
-        spinnerGenre.setAdapter(new CustomFontArrayAdapter(getActivity(), android.R.layout.simple_spinner_dropdown_item, genres));
-        spinnerGenre.setSelection(getIndex(spinnerGenre, mRestaurant.getGenre()), false);
+        final GenreRegistry genres = GenreRegistry.getInstance(getActivity());
+        spinnerGenre.setAdapter(new CustomFontArrayAdapter(getActivity(), android.R.layout.simple_spinner_dropdown_item, genres.getLabels()));
+        spinnerGenre.setSelection(getIndex(genres, mRestaurant.getGenre()), false);
 
         // Add listener to set genre when changed
         spinnerGenre.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
@@ -295,8 +339,8 @@ public class RestaurantFragment extends Fragment {
             @Override
             public void onItemSelected(AdapterView<?> spinner, View view, int position, long id) {
 
-                mRestaurant.setGenre((String) spinner.getItemAtPosition(position));
-                mUpdated = true;
+                mRestaurant.setGenre(genres.getCode(position));
+                mChangedFields |= RestaurantChange.FIELD_GENRE;
                 Log.d("PS", "genre changed");
             }
 
@@ -319,26 +363,15 @@ public class RestaurantFragment extends Fragment {
 
     /**
      * Gets position of genre in spinner
-     * @param spinner
-     * @param genre
-     * @return index of Genre in Spinner, returns index of Other if not found or if genre is null
+     * @param genres genre registry
+     * @param genre genre code
+     * @return index of Genre in Spinner, returns index of Other if genre is unknown or not set
      */
-    private int getIndex(Spinner spinner, String genre){
-
-        if(genre != null){
-
-            for(int i = 0; i < spinner.getCount(); i++){
-
-                if(spinner.getItemAtPosition(i).equals(genre)){
+    private int getIndex(GenreRegistry genres, int genre){
 
-                    return i;
-                }
-            }
-        }
-
-        // Item not found, set as 'Other', which is always last position in spinner. Also set genre in Restaurant object as 'Other'
-        int index = spinner.getCount() - 1;
-        mRestaurant.setGenre((String) spinner.getItemAtPosition(index));
+        // Unknown genre is shown as 'Other', so also set genre in Restaurant object as 'Other'
+        int index = genres.getPosition(genre);
+        mRestaurant.setGenre(genres.getCode(index));
         return index;
     }
 
@@ -361,19 +394,41 @@ public class RestaurantFragment extends Fragment {
         }
     }
 
-    private BroadcastReceiver mReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
+    private EventBus.Subscriber<LocationHelper.LocationRetrievedEvent> mLocationSubscriber = new EventBus.Subscriber<LocationHelper.LocationRetrievedEvent>() {
 
-            if (intent.getAction().equals(LocationHelper.ACTION_LOCATION_RETRIEVED)) {
+        @Override
+        public void onEvent(LocationHelper.LocationRetrievedEvent event) {
 
-                // Search on map for restaurant. Location will be null if not contained in intent
-                Location location = intent.getParcelableExtra(LocationHelper.EXTRA_LOCATION);
-                Util.showOnMap(getActivity(), mRestaurant.getName(), location);
-                mLocationHelper.disconnect();
-            }
+            // Search on map for restaurant. Location will be null if not available
+            Util.showOnMap(getActivity(), mRestaurant.getName(), event.getLocation());
+            mLocationHelper.disconnect();
         }
     };
 
+    /**
+     * Event asking the fragment hosting the restaurant list to delete a restaurant
+     */
+    public static class DeleteRestaurantEvent {
 
+        private final String mRestaurantId;
+
+        public DeleteRestaurantEvent(String restaurantId){
+
+            mRestaurantId = restaurantId;
+        }
+
+        public String getRestaurantId(){
+            return mRestaurantId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof DeleteRestaurantEvent) && mRestaurantId.equals(((DeleteRestaurantEvent) o).mRestaurantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return mRestaurantId.hashCode();
+        }
+    }
 }
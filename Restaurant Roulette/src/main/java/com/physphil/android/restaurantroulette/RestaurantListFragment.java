@@ -22,17 +22,13 @@
 package com.physphil.android.restaurantroulette;
 
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.graphics.Typeface;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ListFragment;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.ActionBar;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -41,18 +37,25 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ListView;
-import android.widget.SpinnerAdapter;
 import android.widget.TextView;
 
+import com.physphil.android.restaurantroulette.data.AsyncDatabaseHelper;
 import com.physphil.android.restaurantroulette.data.DatabaseHelper;
+import com.physphil.android.restaurantroulette.models.GenreRegistry;
 import com.physphil.android.restaurantroulette.models.Restaurant;
-import com.physphil.android.restaurantroulette.ui.CustomFontArrayAdapter;
+import com.physphil.android.restaurantroulette.models.RestaurantChange;
 import com.physphil.android.restaurantroulette.ui.CustomFontDialogBuilder;
+import com.physphil.android.restaurantroulette.ui.GenreFilterAdapter;
+import com.physphil.android.restaurantroulette.ui.ListDiff;
 import com.physphil.android.restaurantroulette.ui.RestaurantListAdapter;
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.EventBus;
+import com.physphil.android.restaurantroulette.util.FontCache;
 import com.physphil.android.restaurantroulette.util.Util;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Show list of restaurants stored in user database
@@ -63,24 +66,33 @@ public class RestaurantListFragment extends ListFragment {
     public static final String PREFS_GENRE_FILTER_LIST = "genre_filter_list";
     public static final String PREFS_SHOW_HELP_RESTAURANT_LIST = "show_help_restaurant_list";
 
-    private DatabaseHelper mDatabaseHelper;
-    private List<Restaurant> mRestaurants;
+    private AsyncDatabaseHelper mDatabase;
     private RestaurantListAdapter mAdapter;
+    private GenreFilterAdapter mGenreAdapter;
     private int mFilter;
     private SharedPreferences mPrefs;
     private Typeface mTf;
 
+    /**
+     * Set if a list load was cancelled when the fragment paused, so it needs to be reloaded when resumed
+     */
+    private boolean mReloadOnResume;
+
+    /**
+     * Load of the restaurant list in progress, if any. Only the most recent load is applied to the adapter.
+     */
+    private AsyncDatabaseHelper.Task<ListDiff<Restaurant>> mLoadTask;
+
     public void onCreate(Bundle savedInstanceState){
         super.onCreate(savedInstanceState);
         setHasOptionsMenu(true);
 
-        mDatabaseHelper = DatabaseHelper.getInstance(getActivity());
+        mDatabase = new AsyncDatabaseHelper(getActivity());
         mPrefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        mTf = Typeface.createFromAsset(getActivity().getAssets(), Constants.FONT_DEFAULT);
+        mTf = FontCache.get(getActivity(), Constants.FONT_DEFAULT);
 
-        // Register broadcast receivers. Need to happen here as receivers need to be active while detail fragment is updating
-        LocalBroadcastManager.getInstance(getActivity()).registerReceiver(mLifetimeReceiver,
-                new IntentFilter(RestaurantFragment.ACTION_RESTAURANT_UPDATED));
+        // Register for changes. Need to happen here as subscriber needs to be active while detail fragment is updating
+        EventBus.getInstance().register(RestaurantChange.class, mChangeSubscriber);
     }
 
     @Override
@@ -98,7 +110,12 @@ public class RestaurantListFragment extends ListFragment {
         super.onActivityCreated(savedInstanceState);
         getListView().setDivider(null);
 
-        mFilter = mPrefs.getInt(PREFS_GENRE_FILTER_LIST, Restaurant.GENRE_ALL);
+        mFilter = mPrefs.getInt(PREFS_GENRE_FILTER_LIST, GenreRegistry.POSITION_ALL);
+
+        // Adapter survives view being recreated, so reattach it and update it in place
+        if(mAdapter != null){
+            setListAdapter(mAdapter);
+        }
 
         updateRestaurantListView();
     }
@@ -107,29 +124,39 @@ public class RestaurantListFragment extends ListFragment {
     public void onResume() {
         super.onResume();
 
-        LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getActivity());
-        lbm.registerReceiver(mVisibleReceiver, new IntentFilter(RestaurantFragment.ACTION_DELETE_RESTAURANT));
-        lbm.registerReceiver(mVisibleReceiver, new IntentFilter(NavigationDrawerFragment.ACTION_DRAWER_CLOSED));
+        EventBus bus = EventBus.getInstance();
+        bus.register(RestaurantFragment.DeleteRestaurantEvent.class, mDeleteSubscriber);
+        bus.register(NavigationDrawerFragment.DrawerClosedEvent.class, mDrawerClosedSubscriber);
+
+        if(mReloadOnResume){
+            mReloadOnResume = false;
+            updateRestaurantListView();
+            updateGenreCounts();
+        }
     }
 
     @Override
     public void onPause() {
         super.onPause();
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mVisibleReceiver);
+        EventBus bus = EventBus.getInstance();
+        bus.unregister(RestaurantFragment.DeleteRestaurantEvent.class, mDeleteSubscriber);
+        bus.unregister(NavigationDrawerFragment.DrawerClosedEvent.class, mDrawerClosedSubscriber);
+        mReloadOnResume = mDatabase.cancelReads();
     }
 
     @Override
     public void onDestroy(){
         super.onDestroy();
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mLifetimeReceiver);
+        mDatabase.cancelReads();
+        EventBus.getInstance().unregister(RestaurantChange.class, mChangeSubscriber);
     }
 
     @Override
     public void onListItemClick(ListView l, View v, int position, long id){
 
-        String restaurantId = mRestaurants.get(position).getRestaurantId();
+        String restaurantId = mAdapter.getItem(position).getRestaurantId();
         viewRestaurantDetail(restaurantId);
     }
 
@@ -175,49 +202,138 @@ public class RestaurantListFragment extends ListFragment {
      */
     private void deleteAllRestaurants(){
 
-        // delete from db
-        mDatabaseHelper.deleteAllRestaurants();
+        // delete from db, then let all views know, including this one
+        mDatabase.write(new AsyncDatabaseHelper.Operation<Void>() {
 
-        // clear adapter
-        mRestaurants.clear();
-        mAdapter.notifyDataSetChanged();
+            @Override
+            public Void run(DatabaseHelper db) {
+                db.deleteAllRestaurants();
+                return null;
+            }
+        }, new ChangePoster(RestaurantChange.deletedAll()));
     }
 
     /**
      * Delete restaurant from database and adapter
      * @param id id of restaurant to delete
      */
-    private void deleteRestaurant(String id){
+    private void deleteRestaurant(final String id){
+
+        // delete from db, then let all views know, including this one
+        mDatabase.write(new AsyncDatabaseHelper.Operation<Void>() {
+
+            @Override
+            public Void run(DatabaseHelper db) {
+                db.deleteRestaurantById(id);
+                return null;
+            }
+        }, new ChangePoster(RestaurantChange.deleted(id)));
+    }
+
+    /**
+     * Patch list for a change made to a restaurant, without reloading from database
+     * @param change change to restaurant
+     */
+    private void applyChange(RestaurantChange change){
+
+        // Counts are updated with the change when it's written, so only need to be read again
+        if(change.getType() != RestaurantChange.TYPE_UPDATE || change.hasChanged(RestaurantChange.FIELD_GENRE)){
+            updateGenreCounts();
+        }
 
-        // delete from db
-        mDatabaseHelper.deleteRestaurantById(id);
+        // List will be loaded with the change included
+        if(mAdapter == null){
+            return;
+        }
+
+        switch(change.getType()){
+
+            case RestaurantChange.TYPE_DELETE:
+                mAdapter.remove(change.getRestaurantId());
+                break;
+
+            case RestaurantChange.TYPE_DELETE_ALL:
+                mAdapter.clear();
+                break;
+
+            default:
+
+                int genre = getFilterGenre();
+                int position = mAdapter.getPosition(change.getRestaurantId());
+
+                if(position >= 0){
+
+                    // Shown restaurant was edited. Remove if it no longer matches filter, otherwise move into place by name.
+                    Restaurant patched = change.apply(mAdapter.getItem(position));
+                    if(genre != Restaurant.GENRE_ALL && genre != patched.getGenre()){
+                        mAdapter.remove(patched.getRestaurantId());
+                    }
+                    else{
+                        mAdapter.put(patched);
+                    }
+                }
+                else if(change.getType() == RestaurantChange.TYPE_INSERT){
 
-        // find in adapter, delete and refresh
-        int index = getIndex(id);
+                    Restaurant inserted = change.toRestaurant();
+                    if(genre == Restaurant.GENRE_ALL || genre == inserted.getGenre()){
+                        mAdapter.put(inserted);
+                    }
+                }
+                else if(genre != Restaurant.GENRE_ALL && change.hasChanged(RestaurantChange.FIELD_GENRE) && genre == change.getGenre()){
 
-        if(index >= 0){
-            mRestaurants.remove(index);
-            mAdapter.notifyDataSetChanged();
+                    // Restaurant moved into filtered genre, but only its changed fields are known
+                    updateRestaurantListView();
+                }
         }
     }
 
     /**
-     * Update list of restaurants from database
+     * @return genre code list is filtered by, or Restaurant.GENRE_ALL if showing all restaurants
+     */
+    private int getFilterGenre(){
+
+        return GenreRegistry.getInstance(getActivity()).getFilterCode(mFilter);
+    }
+
+    /**
+     * Update list of restaurants from database in the background. The difference from the current list is calculated
+     * in the background too, and only changed rows are updated in the adapter. Any load still in progress is cancelled,
+     * as reads can complete out of order and an older result must not replace a newer one.
      */
     private void updateRestaurantListView(){
 
-        if(mFilter == Restaurant.GENRE_ALL){
-            mRestaurants = mDatabaseHelper.getAllRestaurants();
-        }
-        else{
-            // Filter by genre. Need to subtract 1 from index as index 0 is added to array and reserved for All Restaurants (no filtering)
-            String genres[] = getResources().getStringArray(R.array.genres);
-            mRestaurants = mDatabaseHelper.getRestaurantsByGenre(genres[mFilter - 1]);
+        if(mLoadTask != null){
+            mLoadTask.cancel();
         }
 
-        // Need to replace adapter as mRestaurants is a new object. Adapter is still using old object, which no longer exists.
-        mAdapter = new RestaurantListAdapter(getActivity(), mRestaurants);
-        setListAdapter(mAdapter);
+        final int genre = getFilterGenre();
+        final List<Restaurant> current = (mAdapter != null) ? mAdapter.getSnapshot() : Collections.<Restaurant>emptyList();
+        final int version = (mAdapter != null) ? mAdapter.getVersion() : RestaurantListAdapter.NO_VERSION;
+
+        mLoadTask = mDatabase.read(new AsyncDatabaseHelper.Operation<ListDiff<Restaurant>>() {
+
+            @Override
+            public ListDiff<Restaurant> run(DatabaseHelper db) {
+
+                List<Restaurant> restaurants = (genre == Restaurant.GENRE_ALL) ? db.getAllRestaurants() : db.getRestaurantsByGenre(genre);
+                return ListDiff.calculate(current, restaurants, RestaurantListAdapter.DIFF_CALLBACK);
+            }
+        }, new AsyncDatabaseHelper.Callback<ListDiff<Restaurant>>() {
+
+            @Override
+            public void onResult(ListDiff<Restaurant> diff) {
+
+                mLoadTask = null;
+
+                if(mAdapter == null){
+                    mAdapter = new RestaurantListAdapter(getActivity(), diff.getNewList());
+                    setListAdapter(mAdapter);
+                }
+                else{
+                    mAdapter.apply(diff, version);
+                }
+            }
+        });
     }
 
     /**
@@ -225,15 +341,14 @@ public class RestaurantListFragment extends ListFragment {
      */
     public void setupListFiltering(){
 
-        List<String> genres = Restaurant.getGenresForAdapter(getActivity());
-
-        // Override adapter to set font
-        final SpinnerAdapter adapter = new CustomFontArrayAdapter(getActivity(), android.R.layout.simple_spinner_dropdown_item, genres);
+        // Adapter sets font, and shows number of restaurants in each genre
+        mGenreAdapter = new GenreFilterAdapter(getActivity());
+        updateGenreCounts();
 
         ActionBar actionBar = ((MainActivity) getActivity()).getSupportActionBar();
         actionBar.setDisplayShowTitleEnabled(false);
         actionBar.setNavigationMode(ActionBar.NAVIGATION_MODE_LIST);
-        actionBar.setListNavigationCallbacks(adapter, new ActionBar.OnNavigationListener() {
+        actionBar.setListNavigationCallbacks(mGenreAdapter, new ActionBar.OnNavigationListener() {
 
             @Override
             public boolean onNavigationItemSelected(int i, long l) {
@@ -255,21 +370,27 @@ public class RestaurantListFragment extends ListFragment {
     }
 
     /**
-     * Get index of Restaurant object according to id
-     * @param id id of restaurant to find
-     * @return index of restaurant in mRestaurants, -1 if not found
+     * Load number of restaurants in each genre in the background, and show them in the filter
      */
-    private int getIndex(String id){
+    private void updateGenreCounts(){
 
-        for(int i = 0; i < mRestaurants.size(); i++){
+        if(mGenreAdapter == null){
+            return;
+        }
 
-            if(mRestaurants.get(i).getRestaurantId().equals(id)){
+        mDatabase.read(new AsyncDatabaseHelper.Operation<Map<Integer, Integer>>() {
 
-                return i;
+            @Override
+            public Map<Integer, Integer> run(DatabaseHelper db) {
+                return db.getGenreCounts();
             }
-        }
+        }, new AsyncDatabaseHelper.Callback<Map<Integer, Integer>>() {
 
-        return -1;
+            @Override
+            public void onResult(Map<Integer, Integer> counts) {
+                mGenreAdapter.setGenreCounts(counts);
+            }
+        });
     }
 
     private void showHelpDialog(){
@@ -306,47 +427,62 @@ public class RestaurantListFragment extends ListFragment {
     }
 
     /**
-     * Receiver to catch all broadcasts for the lifetime of this fragment
+     * Subscriber to restaurant changes for the lifetime of this fragment
      */
-    private BroadcastReceiver mLifetimeReceiver = new BroadcastReceiver() {
+    private EventBus.Subscriber<RestaurantChange> mChangeSubscriber = new EventBus.Subscriber<RestaurantChange>() {
 
         @Override
-        public void onReceive(Context context, Intent intent) {
-
-            if(intent.getAction().equals(RestaurantFragment.ACTION_RESTAURANT_UPDATED)){
-
-                /** Need to reset list adapter as projects are filtered and sorted alphabetically. Can't just add to adapter and call
-                 * onNotifyDataSetChanged, as new entries would be out of place.
-                 */
-                updateRestaurantListView();
-            }
+        public void onEvent(RestaurantChange change) {
+            applyChange(change);
         }
     };
 
     /**
-     * Receiver to catch all broadcasts while fragment is visible
+     * Posts a restaurant change once it has been written to database
      */
-    private BroadcastReceiver mVisibleReceiver = new BroadcastReceiver() {
+    private static class ChangePoster implements AsyncDatabaseHelper.Callback<Void> {
+
+        private final RestaurantChange mChange;
+
+        ChangePoster(RestaurantChange change){
+
+            mChange = change;
+        }
+
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onResult(Void result) {
+            EventBus.getInstance().post(mChange);
+        }
+    }
 
-            if(intent.getAction().equals(RestaurantFragment.ACTION_DELETE_RESTAURANT)){
+    /**
+     * Subscriber to delete requests from list rows, while fragment is visible
+     */
+    private EventBus.Subscriber<RestaurantFragment.DeleteRestaurantEvent> mDeleteSubscriber = new EventBus.Subscriber<RestaurantFragment.DeleteRestaurantEvent>() {
 
-                String id = intent.getStringExtra(RestaurantFragment.EXTRA_RESTAURANT_ID);
+        @Override
+        public void onEvent(RestaurantFragment.DeleteRestaurantEvent event) {
 
-                if(id != null){
+            if(event.getRestaurantId() != null){
 
-                    deleteRestaurant(id);
-                }
+                deleteRestaurant(event.getRestaurantId());
             }
-            else if(intent.getAction().equals(NavigationDrawerFragment.ACTION_DRAWER_CLOSED)){
+        }
+    };
+
+    /**
+     * Subscriber to navigation drawer closing, while fragment is visible
+     */
+    private EventBus.Subscriber<NavigationDrawerFragment.DrawerClosedEvent> mDrawerClosedSubscriber = new EventBus.Subscriber<NavigationDrawerFragment.DrawerClosedEvent>() {
 
-                // Show help dialog if never been shown before
-                boolean showHelp = mPrefs.getBoolean(PREFS_SHOW_HELP_RESTAURANT_LIST, true);
-                if(showHelp){
+        @Override
+        public void onEvent(NavigationDrawerFragment.DrawerClosedEvent event) {
 
-                    showHelpDialog();
-                }
+            // Show help dialog if never been shown before
+            boolean showHelp = mPrefs.getBoolean(PREFS_SHOW_HELP_RESTAURANT_LIST, true);
+            if(showHelp){
+
+                showHelpDialog();
             }
         }
     };
@@ -0,0 +1,56 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette;
+
+import android.app.Application;
+import android.content.res.Configuration;
+
+import com.physphil.android.restaurantroulette.data.AsyncDatabaseHelper;
+import com.physphil.android.restaurantroulette.models.GenreRegistry;
+import com.physphil.android.restaurantroulette.util.DateFormatCache;
+import com.physphil.android.restaurantroulette.util.FontCache;
+
+/**
+ * Starts background initialization as soon as the app process starts
+ */
+public class RestaurantRouletteApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Open and upgrade database off the UI thread, before the first fragment needs it
+        AsyncDatabaseHelper.warmUp(this);
+
+        // Parse fonts once, before the first screen sets them
+        FontCache.preload(this);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+
+        // Locale may have changed, so date formats and genre labels need to be rebuilt
+        DateFormatCache.invalidate();
+        GenreRegistry.invalidate();
+    }
+}
@@ -21,17 +21,12 @@
 
 package com.physphil.android.restaurantroulette;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.graphics.Typeface;
-import android.location.Location;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
-import android.support.v4.content.LocalBroadcastManager;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
@@ -44,17 +39,20 @@ import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.physphil.android.restaurantroulette.data.AsyncDatabaseHelper;
 import com.physphil.android.restaurantroulette.data.DatabaseHelper;
+import com.physphil.android.restaurantroulette.models.GenreRegistry;
 import com.physphil.android.restaurantroulette.models.Restaurant;
-import com.physphil.android.restaurantroulette.models.RestaurantHistory;
-import com.physphil.android.restaurantroulette.ui.CustomFontArrayAdapter;
+import com.physphil.android.restaurantroulette.models.RestaurantChange;
+import com.physphil.android.restaurantroulette.ui.GenreFilterAdapter;
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.DateFormatCache;
+import com.physphil.android.restaurantroulette.util.EventBus;
+import com.physphil.android.restaurantroulette.util.FontCache;
 import com.physphil.android.restaurantroulette.util.LocationHelper;
 import com.physphil.android.restaurantroulette.util.Util;
 
-import java.text.DateFormat;
-import java.util.Date;
-import java.util.List;
+import java.util.Map;
 
 /**
  * Created by pshadlyn on 2/27/14.
@@ -65,10 +63,10 @@ public class RestaurantSelectorFragment extends Fragment {
     public static String PREFS_SHOW_HELP_RESTAURANT_SELECTOR = "show_help_selector";
 
     private Restaurant mRestaurant;
-    private List<RestaurantHistory> mHistory;
-    private DatabaseHelper mDatabaseHelper;
+    private AsyncDatabaseHelper mDatabase;
     private LocationHelper mLocationHelper;
     private Spinner spinnerGenre;
+    private GenreFilterAdapter mGenreAdapter;
     private RelativeLayout rlAnswer;
     private RelativeLayout rlNumberVisits;
     private RelativeLayout rlLastVisit;
@@ -87,8 +85,7 @@ public class RestaurantSelectorFragment extends Fragment {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        LocalBroadcastManager.getInstance(getActivity()).registerReceiver(mLifetimeReceiver,
-                new IntentFilter(RestaurantFragment.ACTION_RESTAURANT_UPDATED));
+        EventBus.getInstance().register(RestaurantChange.class, mChangeSubscriber);
     }
 
     @Override
@@ -120,13 +117,13 @@ public class RestaurantSelectorFragment extends Fragment {
         setHasOptionsMenu(true);
 
         prefs = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        mDatabaseHelper = DatabaseHelper.getInstance(getActivity());
+        mDatabase = new AsyncDatabaseHelper(getActivity());
         mLocationHelper = new LocationHelper(getActivity());
-        mFilter = prefs.getInt(PREFS_GENRE_FILTER_SELECTOR, Restaurant.GENRE_ALL);
+        mFilter = prefs.getInt(PREFS_GENRE_FILTER_SELECTOR, GenreRegistry.POSITION_ALL);
 
         initViewContent();
 
-        // Set answer through fragment objects mRestaurant and mHistory. Don't save to history as no new selection was made
+        // Set answer through fragment object mRestaurant. Don't save to history as no new selection was made
         setAnswer(false);
     }
 
@@ -134,24 +131,32 @@ public class RestaurantSelectorFragment extends Fragment {
     public void onResume(){
         super.onResume();
 
-        LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getActivity());
-        lbm.registerReceiver(mVisibleReceiver, new IntentFilter(HistoryListFragment.ACTION_HISTORY_CLEARED));
-        lbm.registerReceiver(mVisibleReceiver, new IntentFilter(LocationHelper.ACTION_LOCATION_RETRIEVED));
-        lbm.registerReceiver(mVisibleReceiver, new IntentFilter(NavigationDrawerFragment.ACTION_DRAWER_CLOSED));
+        EventBus bus = EventBus.getInstance();
+        bus.register(HistoryListFragment.HistoryClearedEvent.class, mHistoryClearedSubscriber);
+        bus.register(LocationHelper.LocationRetrievedEvent.class, mLocationSubscriber);
+        bus.register(NavigationDrawerFragment.DrawerClosedEvent.class, mDrawerClosedSubscriber);
     }
 
     @Override
     public void onPause() {
         super.onPause();
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mVisibleReceiver);
+        EventBus bus = EventBus.getInstance();
+        bus.unregister(HistoryListFragment.HistoryClearedEvent.class, mHistoryClearedSubscriber);
+        bus.unregister(LocationHelper.LocationRetrievedEvent.class, mLocationSubscriber);
+        bus.unregister(NavigationDrawerFragment.DrawerClosedEvent.class, mDrawerClosedSubscriber);
+
+        // Selection is abandoned if fragment is paused before it completes
+        mDatabase.cancelReads();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
 
-        LocalBroadcastManager.getInstance(getActivity()).unregisterReceiver(mLifetimeReceiver);
+        mDatabase.cancelReads();
+
+        EventBus.getInstance().unregister(RestaurantChange.class, mChangeSubscriber);
     }
 
     private void initViewContent(){
@@ -175,11 +180,11 @@ public class RestaurantSelectorFragment extends Fragment {
             }
         });
 
-        List<String> genres = Restaurant.getGenresForAdapter(getActivity());
-
-        // Override adapter to set font
-        spinnerGenre.setAdapter(new CustomFontArrayAdapter(getActivity(), android.R.layout.simple_spinner_dropdown_item, genres));
-        spinnerGenre.setSelection(prefs.getInt(PREFS_GENRE_FILTER_SELECTOR, Restaurant.GENRE_ALL), false);  // use false for animate to not trigger listener when setting initial selection. Weird, but works.
+        // Adapter sets font, and shows number of restaurants in each genre
+        mGenreAdapter = new GenreFilterAdapter(getActivity());
+        spinnerGenre.setAdapter(mGenreAdapter);
+        updateGenreCounts();
+        spinnerGenre.setSelection(prefs.getInt(PREFS_GENRE_FILTER_SELECTOR, GenreRegistry.POSITION_ALL), false);  // use false for animate to not trigger listener when setting initial selection. Weird, but works.
         spinnerGenre.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
 
             @Override
@@ -214,7 +219,7 @@ public class RestaurantSelectorFragment extends Fragment {
      */
     private void setFonts(View v){
 
-        Typeface tf = Typeface.createFromAsset(getActivity().getAssets(), Constants.FONT_DEFAULT);
+        Typeface tf = FontCache.get(getActivity(), Constants.FONT_DEFAULT);
         btnSelectRestaurant.setTypeface(tf);
         btnGetDirections.setTypeface(tf);
         tvHeader.setTypeface(tf);
@@ -231,36 +236,57 @@ public class RestaurantSelectorFragment extends Fragment {
         ((TextView) v.findViewById(R.id.answer_summary_price_text)).setTypeface(tf);
     }
 
+    /**
+     * Load number of restaurants in each genre in the background, and show them in the filter
+     */
+    private void updateGenreCounts(){
+
+        mDatabase.read(new AsyncDatabaseHelper.Operation<Map<Integer, Integer>>() {
+
+            @Override
+            public Map<Integer, Integer> run(DatabaseHelper db) {
+                return db.getGenreCounts();
+            }
+        }, new AsyncDatabaseHelper.Callback<Map<Integer, Integer>>() {
+
+            @Override
+            public void onResult(Map<Integer, Integer> counts) {
+                mGenreAdapter.setGenreCounts(counts);
+            }
+        });
+    }
+
     private void selectRestaurant(){
 
-        // Get list of restaurants to choose from based on filter
-        List<Restaurant> restaurants;
+        // Pick restaurant at random from those matching filter
+        final int genre = mGenreAdapter.getGenre(mFilter);
 
-        if(mFilter == Restaurant.GENRE_ALL){
+        mDatabase.read(new AsyncDatabaseHelper.Operation<Restaurant>() {
 
-            restaurants = mDatabaseHelper.getAllRestaurants();
-        }
-        else{
+            @Override
+            public Restaurant run(DatabaseHelper db) {
+                return db.pickRandomRestaurant(genre);
+            }
+        }, new AsyncDatabaseHelper.Callback<Restaurant>() {
 
-            String genre = Restaurant.getGenresForAdapter(getActivity()).get(mFilter);
-            restaurants = mDatabaseHelper.getRestaurantsByGenre(genre);
-        }
+            @Override
+            public void onResult(Restaurant restaurant) {
 
-        // Pick one at random and record history
-        if(restaurants.size() > 0){
-            int randomIndex = (int) (Math.floor(Math.random() * restaurants.size()));
-            mRestaurant = restaurants.get(randomIndex);
-            mHistory = mDatabaseHelper.getHistoryByRestaurant(mRestaurant.getRestaurantId());
-            setAnswer(true);
-        }
-        else{
+                // Record history
+                if(restaurant != null){
+                    mRestaurant = restaurant;
+                    setAnswer(true);
+                }
+                else{
 
-            Toast.makeText(getActivity(), R.string.toast_no_restaurants_found, Toast.LENGTH_SHORT).show();
-        }
+                    Toast.makeText(getActivity(), R.string.toast_no_restaurants_found, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
 
     /**
-     * Use values of mRestaurant and mHistory to set answer.  If objects are null then answer fields are hidden
+     * Use values of mRestaurant to set answer.  If object is null then answer fields are hidden
      * @param addToHistory whether to add this selection to selection history
      */
     private void setAnswer(boolean addToHistory){
@@ -281,16 +307,13 @@ public class RestaurantSelectorFragment extends Fragment {
                 btnGetDirections.setVisibility(View.GONE);
             }
 
-            if(mHistory.size() > 0){
+            if(mRestaurant.getVisitCount() > 0){
 
-                // set summary fields
+                // set summary fields. Visit count and last visit are read with the restaurant, before this selection is added
                 setSummaryFieldsVisibility(true);
-                tvNumberOfVisits.setText(Integer.toString(mHistory.size()));
+                tvNumberOfVisits.setText(Integer.toString(mRestaurant.getVisitCount()));
 
-                // Objects returned from db sorted by date. Entry 0 is the most recent
-                Date recentVisit = mHistory.get(0).getDate();
-                DateFormat df = DateFormat.getDateInstance();
-                tvLastVisit.setText(df.format(recentVisit));
+                tvLastVisit.setText(DateFormatCache.formatDate(mRestaurant.getLastVisit()));
             }
             else{
 
@@ -300,7 +323,16 @@ public class RestaurantSelectorFragment extends Fragment {
 
             // Add selection to history
             if(addToHistory){
-                mDatabaseHelper.addRestaurantHistory(mRestaurant.getRestaurantId());
+                final String id = mRestaurant.getRestaurantId();
+
+                mDatabase.write(new AsyncDatabaseHelper.Operation<Void>() {
+
+                    @Override
+                    public Void run(DatabaseHelper db) {
+                        db.addRestaurantHistory(id);
+                        return null;
+                    }
+                }, null);
             }
         }
         else{
@@ -336,7 +368,6 @@ public class RestaurantSelectorFragment extends Fragment {
     private void clearAnswer(){
 
         mRestaurant = null;
-        mHistory = null;
         setAnswer(false);
     }
 
@@ -360,55 +391,73 @@ public class RestaurantSelectorFragment extends Fragment {
     }
 
     /**
-     * Broadcast receiver to be active only while the fragment is visible
+     * Subscriber to history being cleared, while the fragment is visible
      */
-    private BroadcastReceiver mVisibleReceiver = new BroadcastReceiver() {
+    private EventBus.Subscriber<HistoryListFragment.HistoryClearedEvent> mHistoryClearedSubscriber = new EventBus.Subscriber<HistoryListFragment.HistoryClearedEvent>() {
 
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onEvent(HistoryListFragment.HistoryClearedEvent event) {
 
-            if(intent.getAction().equals(HistoryListFragment.ACTION_HISTORY_CLEARED)){
+            // Clear answer if restaurant history has been erased
+            clearAnswer();
+        }
+    };
 
-                // Clear answer if restaurant history has been erased
-                clearAnswer();
-            }
-            else if(intent.getAction().equals(LocationHelper.ACTION_LOCATION_RETRIEVED)){
+    /**
+     * Subscriber to location being retrieved, while the fragment is visible
+     */
+    private EventBus.Subscriber<LocationHelper.LocationRetrievedEvent> mLocationSubscriber = new EventBus.Subscriber<LocationHelper.LocationRetrievedEvent>() {
 
-                Location location = intent.getParcelableExtra(LocationHelper.EXTRA_LOCATION);
-                Util.showOnMap(getActivity(), mRestaurant.getName(), location);
-                mLocationHelper.disconnect();
-            }
-            else if(intent.getAction().equals(NavigationDrawerFragment.ACTION_DRAWER_CLOSED)){
+        @Override
+        public void onEvent(LocationHelper.LocationRetrievedEvent event) {
+
+            Util.showOnMap(getActivity(), mRestaurant.getName(), event.getLocation());
+            mLocationHelper.disconnect();
+        }
+    };
 
-                // Show help menu if never been shown
-                boolean showHelp = prefs.getBoolean(PREFS_SHOW_HELP_RESTAURANT_SELECTOR, true);
-                if(showHelp){
+    /**
+     * Subscriber to navigation drawer closing, while the fragment is visible
+     */
+    private EventBus.Subscriber<NavigationDrawerFragment.DrawerClosedEvent> mDrawerClosedSubscriber = new EventBus.Subscriber<NavigationDrawerFragment.DrawerClosedEvent>() {
 
-                    showHelpDialog();
-                }
+        @Override
+        public void onEvent(NavigationDrawerFragment.DrawerClosedEvent event) {
+
+            // Show help menu if never been shown
+            boolean showHelp = prefs.getBoolean(PREFS_SHOW_HELP_RESTAURANT_SELECTOR, true);
+            if(showHelp){
+
+                showHelpDialog();
             }
         }
     };
 
     /**
-     * Broadcast Receiver to be active for the lifetime of the fragment
+     * Subscriber to restaurant changes for the lifetime of the fragment
      */
-    private BroadcastReceiver mLifetimeReceiver = new BroadcastReceiver() {
+    private EventBus.Subscriber<RestaurantChange> mChangeSubscriber = new EventBus.Subscriber<RestaurantChange>() {
 
         @Override
-        public void onReceive(Context context, Intent intent) {
+        public void onEvent(RestaurantChange change) {
+
+            if(mGenreAdapter != null && (change.getType() != RestaurantChange.TYPE_UPDATE || change.hasChanged(RestaurantChange.FIELD_GENRE))){
+                updateGenreCounts();
+            }
 
-            if(intent.getAction().equals(RestaurantFragment.ACTION_RESTAURANT_UPDATED)){
+            // Patch answer card if the change is to the current answer. New entries can't be the answer.
+            if(mRestaurant != null && change.getType() != RestaurantChange.TYPE_INSERT && change.affects(mRestaurant)){
 
-                // TODO - replace with don't update if returned broadcast indicates a new entry
-                // Update restaurant info from db, update fields in answer card
-                if(mRestaurant != null) {
-                    String id = mRestaurant.getRestaurantId();
-                    mRestaurant = mDatabaseHelper.getRestaurantById(id);
-                    setAnswer(false);
+                if(change.getType() == RestaurantChange.TYPE_UPDATE){
+                    // Visits are kept from when restaurant was selected, so current selection isn't counted
+                    mRestaurant = change.apply(mRestaurant);
+                }
+                else{
+                    mRestaurant = null;
                 }
+
+                setAnswer(false);
             }
         }
     };
-    
 }
@@ -0,0 +1,276 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs DatabaseHelper operations on a background thread and delivers results on the UI thread.
+ * Each fragment should create its own instance, so its pending reads can be cancelled when it pauses.
+ * Writes are never cancelled, and are run one at a time in the order they were submitted. Reads run concurrently on a
+ * separate pool, which the database's write-ahead log allows to proceed while a write is in progress. A read submitted
+ * while writes are still pending is queued behind them instead, so it always sees the caller's earlier writes.
+ */
+public class AsyncDatabaseHelper {
+
+    private static final int READ_THREADS = 2;
+
+    // Queues are unbounded, so an operation is never rejected or run on the calling thread, which would block the UI
+    // thread and let a write overtake earlier queued writes
+    private static final ThreadPoolExecutor sWriteExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DatabaseThreadFactory("DatabaseWriteThread"));
+
+    private static final ThreadPoolExecutor sReadExecutor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DatabaseThreadFactory("DatabaseReadThread"));
+
+    /**
+     * Number of writes submitted which haven't completed yet
+     */
+    private static final AtomicInteger sPendingWrites = new AtomicInteger();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final DatabaseHelper mDatabaseHelper;
+
+    /**
+     * Reads which haven't delivered their result yet. Only accessed on the UI thread.
+     */
+    private final Set<Task<?>> mPendingReads = new HashSet<Task<?>>();
+
+    public AsyncDatabaseHelper(Context context){
+
+        mDatabaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * Open database and prepare caches in the background. Any operations submitted afterwards run once it completes,
+     * so they never wait on the UI thread for the database to be created or upgraded.
+     * @param context context
+     */
+    public static void warmUp(Context context){
+
+        final DatabaseHelper db = DatabaseHelper.getInstance(context);
+
+        submitWrite(new Runnable() {
+
+            @Override
+            public void run() {
+                db.warmUp();
+            }
+        });
+    }
+
+    /**
+     * Submit write to the write thread, tracking it as pending until it has run
+     * @param write write to run
+     */
+    private static void submitWrite(final Runnable write){
+
+        sPendingWrites.incrementAndGet();
+
+        sWriteExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try{
+                    write.run();
+                }
+                finally{
+                    sPendingWrites.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Run read operation in the background. Must be called from the UI thread.
+     * @param operation operation to run
+     * @param callback callback to receive result on UI thread, unless the read is cancelled first
+     * @return task, which can be cancelled
+     */
+    public <T> Task<T> read(Operation<T> operation, Callback<T> callback){
+
+        Task<T> task = new Task<T>(operation, callback, true);
+        mPendingReads.add(task);
+
+        // Queue behind pending writes so the read sees them
+        if(sPendingWrites.get() > 0){
+            sWriteExecutor.execute(task);
+        }
+        else{
+            sReadExecutor.execute(task);
+        }
+
+        return task;
+    }
+
+    /**
+     * Run write operation in the background. Writes are not cancelled by {@link #cancelReads()}.
+     * @param operation operation to run
+     * @param callback callback to receive result on UI thread once write has completed, or null
+     */
+    public <T> void write(Operation<T> operation, Callback<T> callback){
+
+        submitWrite(new Task<T>(operation, callback, false));
+    }
+
+    /**
+     * Cancel all pending reads. Their callbacks will not be called. Must be called from the UI thread.
+     * @return true if any reads were cancelled, so the caller knows it needs to reload
+     */
+    public boolean cancelReads(){
+
+        boolean cancelled = !mPendingReads.isEmpty();
+
+        for(Task<?> task : mPendingReads){
+            task.mCancelled = true;
+        }
+
+        mPendingReads.clear();
+        return cancelled;
+    }
+
+    /**
+     * Database operation to run in the background
+     */
+    public static interface Operation<T> {
+        T run(DatabaseHelper db);
+    }
+
+    /**
+     * Callback to receive result of operation on the UI thread
+     */
+    public static interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * Pending database operation
+     */
+    public class Task<T> implements Runnable {
+
+        private final Operation<T> mOperation;
+        private final Callback<T> mCallback;
+        private final boolean mIsRead;
+        private volatile boolean mCancelled;
+
+        private Task(Operation<T> operation, Callback<T> callback, boolean isRead){
+
+            mOperation = operation;
+            mCallback = callback;
+            mIsRead = isRead;
+        }
+
+        /**
+         * Cancel task. If it hasn't been run yet it will be skipped, and its callback won't be called. Must be called from the UI thread.
+         */
+        public void cancel(){
+
+            mCancelled = true;
+            mPendingReads.remove(this);
+        }
+
+        @Override
+        public void run(){
+
+            if(mCancelled){
+                return;
+            }
+
+            final T result;
+
+            try{
+                result = mOperation.run(mDatabaseHelper);
+            }
+            catch(final RuntimeException e){
+
+                // Rethrow on UI thread, the same as if the operation had been run there
+                sMainHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        throw e;
+                    }
+                });
+                return;
+            }
+
+            sMainHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    if(mIsRead){
+
+                        if(mCancelled){
+                            return;
+                        }
+
+                        mPendingReads.remove(Task.this);
+                    }
+
+                    if(mCallback != null){
+                        mCallback.onResult(result);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates low priority background threads for database access
+     */
+    private static class DatabaseThreadFactory implements ThreadFactory {
+
+        private final String mName;
+
+        public DatabaseThreadFactory(String name){
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, mName);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+package com.physphil.android.restaurantroulette.data;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps cursor rows to objects. Column indexes are resolved once when the mapper is created, rather than looked up
+ * by name for every cell. Columns missing from the cursor's projection are skipped.
+ */
+abstract class CursorMapper<T> {
+
+    protected final Cursor mCursor;
+
+    protected CursorMapper(Cursor cursor){
+
+        mCursor = cursor;
+    }
+
+    /**
+     * @return new, empty object to fill from the current row
+     */
+    protected abstract T newInstance();
+
+    /**
+     * Fill object with values from the current row
+     * @param item object to fill
+     */
+    protected abstract void fill(T item);
+
+    /**
+     * @return new object with values from the current row
+     */
+    T map(){
+
+        T item = newInstance();
+        fill(item);
+        return item;
+    }
+
+    /**
+     * Map all rows of cursor, starting from the first row
+     * @return list of objects, in cursor order
+     */
+    List<T> mapAll(){
+
+        List<T> items = new ArrayList<T>(mCursor.getCount());
+        mCursor.moveToPosition(-1);
+
+        while(mCursor.moveToNext()){
+            items.add(map());
+        }
+
+        return items;
+    }
+
+    /**
+     * @param column column name
+     * @return index of column in cursor, or -1 if it isn't in the projection
+     */
+    protected int index(String column){
+
+        return mCursor.getColumnIndex(column);
+    }
+}
@@ -21,18 +21,28 @@
 
 package com.physphil.android.restaurantroulette.data;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
 
+import com.physphil.android.restaurantroulette.R;
 import com.physphil.android.restaurantroulette.models.Restaurant;
 import com.physphil.android.restaurantroulette.models.RestaurantHistory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * Created by pshadlyn on 2/24/14.
@@ -40,9 +50,17 @@ import java.util.List;
 public class DatabaseHelper extends SQLiteOpenHelper {
 
     public static final String DATABASE_NAME = "RESTAURANT_ROULETTE";
-    public static final int DATABASE_VERSION = 1;
-    private static DatabaseHelper mInstance;
-    private static SQLiteDatabase mDb;
+    public static final int DATABASE_VERSION = 6;
+    public static final int DEFAULT_IMPORT_CHUNK_SIZE = 500;
+    public static final int HISTORY_PAGE_SIZE = 50;
+
+    // Write-ahead log is checkpointed once it reaches this many pages, and truncated back to this size afterwards
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 250;
+    private static final int WAL_SIZE_LIMIT_BYTES = 1024 * 1024;
+    private static volatile DatabaseHelper mInstance;
+    private final StatementCache mStatements = new StatementCache();
+    private final RestaurantCache mCache;
+    private final Random mRandom = new Random();
 
     // Database tables
     public static final String TABLE_RESTAURANTS = "Restaurants";
@@ -57,8 +75,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_RESTAURANT_NOTES = "notes";
     public static final String COLUMN_RESTAURANT_ADDRESS = "address";
     public static final String COLUMN_RESTAURANT_PHONE = "phone";
+    public static final String COLUMN_RESTAURANT_VISIT_COUNT = "visitCount";
+    public static final String COLUMN_RESTAURANT_LAST_VISIT = "lastVisit";
 
-    public static final String[] COLUMNS_RESTAURANT_TABLE = {COLUMN_RESTAURANT_ID, COLUMN_RESTAURANT_NAME, COLUMN_RESTAURANT_GENRE, COLUMN_RESTAURANT_USER_RATING, COLUMN_RESTAURANT_PRICE_LEVEL, COLUMN_RESTAURANT_NOTES};
+    public static final String[] COLUMNS_RESTAURANT_TABLE = {COLUMN_RESTAURANT_ID, COLUMN_RESTAURANT_NAME, COLUMN_RESTAURANT_GENRE, COLUMN_RESTAURANT_USER_RATING, COLUMN_RESTAURANT_PRICE_LEVEL, COLUMN_RESTAURANT_NOTES, COLUMN_RESTAURANT_VISIT_COUNT, COLUMN_RESTAURANT_LAST_VISIT};
 
     // History Table columns
     public static final String COLUMN_HISTORY_ID = "id";
@@ -71,46 +91,411 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String CREATE_TABLE_RESTAURANTS =
             "CREATE table " + TABLE_RESTAURANTS + " (" + COLUMN_RESTAURANT_ID + " TEXT PRIMARY KEY, " +
                 COLUMN_RESTAURANT_NAME + " TEXT, " +
-                COLUMN_RESTAURANT_GENRE + " TEXT, " +
+                COLUMN_RESTAURANT_GENRE + " INTEGER, " +
                 COLUMN_RESTAURANT_USER_RATING + " INTEGER, " +
                 COLUMN_RESTAURANT_PRICE_LEVEL + " INTEGER, " +
                 COLUMN_RESTAURANT_NOTES + " TEXT, " +
                 COLUMN_RESTAURANT_ADDRESS + " TEXT, " +
-                COLUMN_RESTAURANT_PHONE + " TEXT);";
+                COLUMN_RESTAURANT_PHONE + " TEXT, " +
+                COLUMN_RESTAURANT_VISIT_COUNT + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_RESTAURANT_LAST_VISIT + " INTEGER);";
 
     private static final String CREATE_TABLE_HISTORY =
             "CREATE table " + TABLE_HISTORY + " (" + COLUMN_HISTORY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_HISTORY_RESTAURANT_ID + " TEXT, " +
-                COLUMN_HISTORY_DATE + " TEXT);";
+                COLUMN_HISTORY_DATE + " INTEGER);";
+
+    // Database indexes
+    public static final String INDEX_HISTORY_RESTAURANT_DATE = "idx_history_restaurant_date";
+    public static final String INDEX_HISTORY_DATE = "idx_history_date";
+    public static final String INDEX_RESTAURANTS_GENRE_NAME = "idx_restaurants_genre_name";
+    public static final String INDEX_RESTAURANTS_NAME = "idx_restaurants_name";
+
+    // History lookups for a single restaurant, sorted by date
+    private static final String CREATE_INDEX_HISTORY_RESTAURANT_DATE =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_HISTORY_RESTAURANT_DATE + " ON " + TABLE_HISTORY + " (" +
+                COLUMN_HISTORY_RESTAURANT_ID + ", " +
+                COLUMN_HISTORY_DATE + ");";
+
+    // All history sorted by date, and date range queries
+    private static final String CREATE_INDEX_HISTORY_DATE =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_HISTORY_DATE + " ON " + TABLE_HISTORY + " (" +
+                COLUMN_HISTORY_DATE + ");";
+
+    // Restaurants filtered by genre, sorted by name
+    private static final String CREATE_INDEX_RESTAURANTS_GENRE_NAME =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_RESTAURANTS_GENRE_NAME + " ON " + TABLE_RESTAURANTS + " (" +
+                COLUMN_RESTAURANT_GENRE + ", " +
+                COLUMN_RESTAURANT_NAME + " COLLATE NOCASE);";
+
+    // All restaurants, sorted by name
+    private static final String CREATE_INDEX_RESTAURANTS_NAME =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_RESTAURANTS_NAME + " ON " + TABLE_RESTAURANTS + " (" +
+                COLUMN_RESTAURANT_NAME + " COLLATE NOCASE);";
+
+    // Compiled write statements
+    private static final String SQL_INSERT_RESTAURANT =
+            "INSERT OR IGNORE INTO " + TABLE_RESTAURANTS + " (" +
+                COLUMN_RESTAURANT_NAME + ", " +
+                COLUMN_RESTAURANT_GENRE + ", " +
+                COLUMN_RESTAURANT_USER_RATING + ", " +
+                COLUMN_RESTAURANT_PRICE_LEVEL + ", " +
+                COLUMN_RESTAURANT_NOTES + ", " +
+                COLUMN_RESTAURANT_ID + ") VALUES (?, ?, ?, ?, ?, ?);";
+
+    private static final String SQL_UPDATE_RESTAURANT =
+            "UPDATE " + TABLE_RESTAURANTS + " SET " +
+                COLUMN_RESTAURANT_NAME + " = ?, " +
+                COLUMN_RESTAURANT_GENRE + " = ?, " +
+                COLUMN_RESTAURANT_USER_RATING + " = ?, " +
+                COLUMN_RESTAURANT_PRICE_LEVEL + " = ?, " +
+                COLUMN_RESTAURANT_NOTES + " = ? " +
+            "WHERE " + COLUMN_RESTAURANT_ID + " = ?;";
+
+    private static final String SQL_DELETE_RESTAURANT =
+            "DELETE FROM " + TABLE_RESTAURANTS + " WHERE " + COLUMN_RESTAURANT_ID + " = ?;";
+
+    private static final String SQL_DELETE_ALL_RESTAURANTS =
+            "DELETE FROM " + TABLE_RESTAURANTS + ";";
+
+    // Counted from the genre index, without reading any rows
+    private static final String SQL_COUNT_RESTAURANTS_BY_GENRE =
+            "SELECT " + COLUMN_RESTAURANT_GENRE + ", COUNT(*) FROM " + TABLE_RESTAURANTS + " GROUP BY " + COLUMN_RESTAURANT_GENRE + ";";
+
+    private static final String SQL_INSERT_HISTORY =
+            "INSERT INTO " + TABLE_HISTORY + " (" +
+                COLUMN_HISTORY_RESTAURANT_ID + ", " +
+                COLUMN_HISTORY_DATE + ") VALUES (?, ?);";
+
+    private static final String SQL_DELETE_HISTORY_BY_RESTAURANT =
+            "DELETE FROM " + TABLE_HISTORY + " WHERE " + COLUMN_HISTORY_RESTAURANT_ID + " = ?;";
+
+    private static final String SQL_DELETE_ALL_HISTORY =
+            "DELETE FROM " + TABLE_HISTORY + ";";
+
+    // Visit count and last visit of every restaurant once all history has been deleted
+    private static final String SQL_RESET_VISITS =
+            "UPDATE " + TABLE_RESTAURANTS + " SET " +
+                COLUMN_RESTAURANT_VISIT_COUNT + " = 0, " +
+                COLUMN_RESTAURANT_LAST_VISIT + " = NULL " +
+            "WHERE " + COLUMN_RESTAURANT_VISIT_COUNT + " > 0 OR " + COLUMN_RESTAURANT_LAST_VISIT + " IS NOT NULL;";
+
+    // Database triggers
+    public static final String TRIGGER_HISTORY_INSERTED = "trg_history_inserted";
+    public static final String TRIGGER_HISTORY_DELETED = "trg_history_deleted";
+
+    // Keep visit count and last visit of restaurant in sync when a selection is added to history
+    private static final String CREATE_TRIGGER_HISTORY_INSERTED =
+            "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_HISTORY_INSERTED + " AFTER INSERT ON " + TABLE_HISTORY + " " +
+            "BEGIN " +
+                "UPDATE " + TABLE_RESTAURANTS + " SET " +
+                    COLUMN_RESTAURANT_VISIT_COUNT + " = " + COLUMN_RESTAURANT_VISIT_COUNT + " + 1, " +
+                    COLUMN_RESTAURANT_LAST_VISIT + " = MAX(IFNULL(" + COLUMN_RESTAURANT_LAST_VISIT + ", 0), NEW." + COLUMN_HISTORY_DATE + ") " +
+                "WHERE " + COLUMN_RESTAURANT_ID + " = NEW." + COLUMN_HISTORY_RESTAURANT_ID + "; " +
+            "END;";
+
+    // Keep visit count and last visit of restaurant in sync when history is deleted. Last visit lookup uses the (restaurantId, date) index.
+    // Skipped once the restaurant has no visits left, or no longer exists, so bulk deletes which reset or remove restaurants
+    // first only cost a primary key lookup per row.
+    private static final String CREATE_TRIGGER_HISTORY_DELETED =
+            "CREATE TRIGGER IF NOT EXISTS " + TRIGGER_HISTORY_DELETED + " AFTER DELETE ON " + TABLE_HISTORY + " " +
+            "WHEN (SELECT " + COLUMN_RESTAURANT_VISIT_COUNT + " FROM " + TABLE_RESTAURANTS + " " +
+                "WHERE " + COLUMN_RESTAURANT_ID + " = OLD." + COLUMN_HISTORY_RESTAURANT_ID + ") > 0 " +
+            "BEGIN " +
+                "UPDATE " + TABLE_RESTAURANTS + " SET " +
+                    COLUMN_RESTAURANT_VISIT_COUNT + " = " + COLUMN_RESTAURANT_VISIT_COUNT + " - 1, " +
+                    COLUMN_RESTAURANT_LAST_VISIT + " = (SELECT MAX(" + COLUMN_HISTORY_DATE + ") FROM " + TABLE_HISTORY + " " +
+                        "WHERE " + COLUMN_HISTORY_RESTAURANT_ID + " = OLD." + COLUMN_HISTORY_RESTAURANT_ID + ") " +
+                "WHERE " + COLUMN_RESTAURANT_ID + " = OLD." + COLUMN_HISTORY_RESTAURANT_ID + "; " +
+            "END;";
+
+    // Sort order for restaurant lists. Must match collation of the name indexes so they can be used for sorting
+    private static final String ORDER_RESTAURANT_NAME = COLUMN_RESTAURANT_NAME + " COLLATE NOCASE";
 
 
+    /**
+     * Get shared DatabaseHelper instance. Safe to call from any thread. The database itself isn't opened until first used,
+     * or until {@link #warmUp()} is called.
+     * @param context context
+     * @return shared instance
+     */
     public static DatabaseHelper getInstance(Context context){
 
         if(mInstance == null){
 
-            mInstance = new DatabaseHelper(context.getApplicationContext());
+            synchronized(DatabaseHelper.class){
+
+                if(mInstance == null){
+                    mInstance = new DatabaseHelper(context.getApplicationContext());
+                }
+            }
         }
 
         return mInstance;
     }
 
     private DatabaseHelper(Context context){
+
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mCache = new RestaurantCache(context.getResources().getInteger(R.integer.filter_cache_size));
+    }
+
+    /**
+     * Open database, running onCreate or onUpgrade if required, compile the most frequently used statements, and load
+     * all restaurants partitioned by genre, so the list and selector open from the cache. Should be called on a
+     * background thread at startup, so the first screen doesn't pay the cost.
+     */
+    public void warmUp(){
+
+        SQLiteDatabase db = getDatabase();
+        mStatements.get(db, SQL_INSERT_HISTORY);
+        mStatements.get(db, SQL_UPDATE_RESTAURANT);
+        mStatements.get(db, SQL_INSERT_RESTAURANT);
+        getGenrePartitions();
+    }
+
+    /**
+     * Get database, opening it if it isn't open yet
+     * @return open database
+     */
+    private SQLiteDatabase getDatabase(){
+
+        return getWritableDatabase();
+    }
+
+    /**
+     * Enable write-ahead logging, so reads can run on their own connections while a write is in progress
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db){
+        super.onOpen(db);
+
+        // Write-ahead logging is only available from Honeycomb
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && !db.isReadOnly()){
+
+            db.enableWriteAheadLogging();
+            pragma(db, "wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+            pragma(db, "journal_size_limit = " + WAL_SIZE_LIMIT_BYTES);
+        }
+    }
+
+    /**
+     * Run pragma statement. Uses rawQuery as some pragmas return a result, which execSQL doesn't allow.
+     * @param db database
+     * @param pragma pragma to run, minus the PRAGMA keyword
+     */
+    private void pragma(SQLiteDatabase db, String pragma){
+
+        Cursor c = db.rawQuery("PRAGMA " + pragma, null);
+        c.moveToFirst();
+        c.close();
+    }
+
+    /**
+     * Checkpoint write-ahead log, copying its contents back to the database so the log can be reused and truncated.
+     * Called after large writes, rather than waiting for the next automatic checkpoint. Must not be called within a transaction.
+     */
+    private void checkpoint(){
+
+        SQLiteDatabase db = getDatabase();
 
-        mDb = getWritableDatabase();
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && !db.inTransaction()){
+            pragma(db, "wal_checkpoint");
+        }
+    }
+
+    @Override
+    public synchronized void close(){
+
+        mStatements.clear();
+        super.close();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db){
         db.execSQL(CREATE_TABLE_RESTAURANTS);
         db.execSQL(CREATE_TABLE_HISTORY);
+        createIndexes(db);
+        createTriggers(db);
 
         insertInitialData(db);
     }
 
+    /**
+     * Upgrade database one version at a time, so existing installs from any previous version end up with the current schema.
+     * Called within a transaction, so a failed upgrade leaves the database untouched.
+     */
     @Override
-    public void onUpgrade(SQLiteDatabase db, int newVersion, int oldVersion){
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion){
+
+        if(oldVersion < 2){
+            upgradeToVersion2(db);
+        }
+
+        if(oldVersion < 3){
+            upgradeToVersion3(db);
+        }
+
+        if(oldVersion < 4){
+            upgradeToVersion4(db);
+        }
+
+        if(oldVersion < 5){
+            upgradeToVersion5(db);
+        }
 
+        if(oldVersion < 6){
+            upgradeToVersion6(db);
+        }
+    }
+
+    /**
+     * Create all indexes for the current schema
+     * @param db database
+     */
+    private void createIndexes(SQLiteDatabase db){
+
+        db.execSQL(CREATE_INDEX_HISTORY_RESTAURANT_DATE);
+        db.execSQL(CREATE_INDEX_HISTORY_DATE);
+        db.execSQL(CREATE_INDEX_RESTAURANTS_GENRE_NAME);
+        db.execSQL(CREATE_INDEX_RESTAURANTS_NAME);
+    }
+
+    /**
+     * Create all triggers for the current schema
+     * @param db database
+     */
+    private void createTriggers(SQLiteDatabase db){
+
+        db.execSQL(CREATE_TRIGGER_HISTORY_INSERTED);
+        db.execSQL(CREATE_TRIGGER_HISTORY_DELETED);
+    }
+
+    /**
+     * Version 2 adds indexes for history lookups and restaurant filtering/sorting.
+     * Upgrade steps use literal SQL for the schema of the version they produce, rather than the current schema constants,
+     * so later schema changes don't alter what earlier steps create.
+     * @param db database
+     */
+    private void upgradeToVersion2(SQLiteDatabase db){
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_history_restaurant_date ON RestaurantHistory (restaurantId, date);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_restaurants_genre_name ON Restaurants (genre, name COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_restaurants_name ON Restaurants (name COLLATE NOCASE);");
+    }
+
+    /**
+     * Version 3 stores history date as INTEGER (ms since epoch) instead of TEXT. SQLite can't change the type of an
+     * existing column, so the history table is rebuilt and its rows copied across.
+     * @param db database
+     */
+    private void upgradeToVersion3(SQLiteDatabase db){
+
+        db.execSQL("ALTER TABLE RestaurantHistory RENAME TO RestaurantHistory_old;");
+        db.execSQL("DROP INDEX IF EXISTS idx_history_restaurant_date;");
+        db.execSQL("CREATE TABLE RestaurantHistory (id INTEGER PRIMARY KEY AUTOINCREMENT, restaurantId TEXT, date INTEGER);");
+        db.execSQL("INSERT INTO RestaurantHistory (id, restaurantId, date) " +
+                "SELECT id, restaurantId, CAST(date AS INTEGER) FROM RestaurantHistory_old;");
+        db.execSQL("DROP TABLE RestaurantHistory_old;");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_history_restaurant_date ON RestaurantHistory (restaurantId, date);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_history_date ON RestaurantHistory (date);");
+    }
+
+    /**
+     * Version 4 adds visit count and last visit to restaurants, populated from existing history and kept in sync by triggers
+     * @param db database
+     */
+    private void upgradeToVersion4(SQLiteDatabase db){
+
+        db.execSQL("ALTER TABLE Restaurants ADD COLUMN visitCount INTEGER NOT NULL DEFAULT 0;");
+        db.execSQL("ALTER TABLE Restaurants ADD COLUMN lastVisit INTEGER;");
+        db.execSQL("UPDATE Restaurants SET " +
+                "visitCount = (SELECT COUNT(*) FROM RestaurantHistory WHERE restaurantId = Restaurants.id), " +
+                "lastVisit = (SELECT MAX(date) FROM RestaurantHistory WHERE restaurantId = Restaurants.id);");
+
+        createVersion4Triggers(db);
+    }
+
+    /**
+     * Create history triggers as of version 4
+     * @param db database
+     */
+    private void createVersion4Triggers(SQLiteDatabase db){
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_history_inserted AFTER INSERT ON RestaurantHistory " +
+                "BEGIN " +
+                    "UPDATE Restaurants SET visitCount = visitCount + 1, lastVisit = MAX(IFNULL(lastVisit, 0), NEW.date) " +
+                    "WHERE id = NEW.restaurantId; " +
+                "END;");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_history_deleted AFTER DELETE ON RestaurantHistory " +
+                "BEGIN " +
+                    "UPDATE Restaurants SET visitCount = visitCount - 1, " +
+                        "lastVisit = (SELECT MAX(date) FROM RestaurantHistory WHERE restaurantId = OLD.restaurantId) " +
+                    "WHERE id = OLD.restaurantId; " +
+                "END;");
+    }
+
+    /**
+     * Version 5 stores genre as an INTEGER code (Restaurant.GENRE_ constants) instead of its English name. SQLite can't
+     * change the type of an existing column, so the restaurants table is rebuilt and its rows copied across. Genres which
+     * aren't recognised become Other. The history triggers reference the restaurants table, so are dropped while it is
+     * rebuilt, and the table's indexes are dropped along with the old table.
+     * @param db database
+     */
+    private void upgradeToVersion5(SQLiteDatabase db){
+
+        String columns = "id, name, userRating, priceLevel, notes, address, phone, visitCount, lastVisit";
+
+        // Genre names as stored up to version 4, and their codes as of version 5
+        String genreCode = "CASE genre " +
+                "WHEN 'Breakfast' THEN 1 " +
+                "WHEN 'Chinese' THEN 2 " +
+                "WHEN 'Ethnic' THEN 3 " +
+                "WHEN 'Fast Food' THEN 4 " +
+                "WHEN 'Indian' THEN 5 " +
+                "WHEN 'Italian' THEN 6 " +
+                "WHEN 'Japanese' THEN 7 " +
+                "WHEN 'Mexican' THEN 8 " +
+                "WHEN 'North American' THEN 9 " +
+                "WHEN 'Pizza' THEN 10 " +
+                "WHEN 'Pub' THEN 11 " +
+                "WHEN 'Seafood' THEN 12 " +
+                "WHEN 'Sushi' THEN 13 " +
+                "WHEN 'Vegetarian' THEN 14 " +
+                "ELSE 15 END";
+
+        db.execSQL("DROP TRIGGER IF EXISTS trg_history_inserted;");
+        db.execSQL("DROP TRIGGER IF EXISTS trg_history_deleted;");
+        db.execSQL("ALTER TABLE Restaurants RENAME TO Restaurants_old;");
+        db.execSQL("CREATE TABLE Restaurants (id TEXT PRIMARY KEY, name TEXT, genre INTEGER, userRating INTEGER, " +
+                "priceLevel INTEGER, notes TEXT, address TEXT, phone TEXT, visitCount INTEGER NOT NULL DEFAULT 0, lastVisit INTEGER);");
+        db.execSQL("INSERT INTO Restaurants (" + columns + ", genre) SELECT " + columns + ", " + genreCode + " FROM Restaurants_old;");
+        db.execSQL("DROP TABLE Restaurants_old;");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_restaurants_genre_name ON Restaurants (genre, name COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_restaurants_name ON Restaurants (name COLLATE NOCASE);");
+
+        // Triggers are unchanged from version 4
+        createVersion4Triggers(db);
+    }
+
+    /**
+     * Version 6 skips the history delete trigger for restaurants with no visits left, so clearing all history doesn't
+     * recompute last visit for every deleted row
+     * @param db database
+     */
+    private void upgradeToVersion6(SQLiteDatabase db){
+
+        db.execSQL("DROP TRIGGER IF EXISTS trg_history_deleted;");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_history_deleted AFTER DELETE ON RestaurantHistory " +
+                "WHEN (SELECT visitCount FROM Restaurants WHERE id = OLD.restaurantId) > 0 " +
+                "BEGIN " +
+                    "UPDATE Restaurants SET visitCount = visitCount - 1, " +
+                        "lastVisit = (SELECT MAX(date) FROM RestaurantHistory WHERE restaurantId = OLD.restaurantId) " +
+                    "WHERE id = OLD.restaurantId; " +
+                "END;");
     }
 
     /**
@@ -118,18 +503,21 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     private void insertInitialData(SQLiteDatabase db){
 
-        addRestaurant(db, new Restaurant("Burger King", Restaurant.GENRE_FAST_FOOD, 3, 1));
-        addRestaurant(db, new Restaurant("McDonald's", Restaurant.GENRE_FAST_FOOD, 4, 1));
-        addRestaurant(db, new Restaurant("Wendy's", Restaurant.GENRE_FAST_FOOD, 5, 1, "Triple burger if you're feeling hungry!"));
-        addRestaurant(db, new Restaurant("Pizza Hut", Restaurant.GENRE_PIZZA, 4, 2, "Big Box meal is delicious, and also terrifying"));
-        addRestaurant(db, new Restaurant("Olive Garden", Restaurant.GENRE_ITALIAN, 4, 1, "Praise bottomless pasta"));
-        addRestaurant(db, new Restaurant("East Side Mario's", Restaurant.GENRE_ITALIAN, 2, 2));
-        addRestaurant(db, new Restaurant("Cheesecake Factory", Restaurant.GENRE_NORTH_AMERICAN, 3, 2));
-        addRestaurant(db, new Restaurant("Red Lobster", Restaurant.GENRE_SEAFOOD, 1, 2));
-        addRestaurant(db, new Restaurant("The Keg", Restaurant.GENRE_NORTH_AMERICAN, 2, 3, "Try the Pecan Sirloin"));
-        addRestaurant(db, new Restaurant("Denny's", Restaurant.GENRE_BREAKFAST, 5, 1));
-        addRestaurant(db, new Restaurant("IHOP", Restaurant.GENRE_BREAKFAST, 3, 2));
-        addRestaurant(db, new Restaurant("In-N-Out Burger", Restaurant.GENRE_FAST_FOOD, 4, 1, "The In-N-Out Burger is on Camrose"));
+        List<Restaurant> restaurants = Arrays.asList(
+                new Restaurant("Burger King", Restaurant.GENRE_FAST_FOOD, 3, 1),
+                new Restaurant("McDonald's", Restaurant.GENRE_FAST_FOOD, 4, 1),
+                new Restaurant("Wendy's", Restaurant.GENRE_FAST_FOOD, 5, 1, "Triple burger if you're feeling hungry!"),
+                new Restaurant("Pizza Hut", Restaurant.GENRE_PIZZA, 4, 2, "Big Box meal is delicious, and also terrifying"),
+                new Restaurant("Olive Garden", Restaurant.GENRE_ITALIAN, 4, 1, "Praise bottomless pasta"),
+                new Restaurant("East Side Mario's", Restaurant.GENRE_ITALIAN, 2, 2),
+                new Restaurant("Cheesecake Factory", Restaurant.GENRE_NORTH_AMERICAN, 3, 2),
+                new Restaurant("Red Lobster", Restaurant.GENRE_SEAFOOD, 1, 2),
+                new Restaurant("The Keg", Restaurant.GENRE_NORTH_AMERICAN, 2, 3, "Try the Pecan Sirloin"),
+                new Restaurant("Denny's", Restaurant.GENRE_BREAKFAST, 5, 1),
+                new Restaurant("IHOP", Restaurant.GENRE_BREAKFAST, 3, 2),
+                new Restaurant("In-N-Out Burger", Restaurant.GENRE_FAST_FOOD, 4, 1, "The In-N-Out Burger is on Camrose"));
+
+        addRestaurants(db, restaurants, DEFAULT_IMPORT_CHUNK_SIZE, null);
     }
 
     /**
@@ -139,15 +527,44 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public void addRestaurant(SQLiteDatabase db, Restaurant restaurant){
 
-        ContentValues cv = new ContentValues();
-        cv.put(COLUMN_RESTAURANT_ID, restaurant.getRestaurantId());
-        cv.put(COLUMN_RESTAURANT_NAME, restaurant.getName());
-        cv.put(COLUMN_RESTAURANT_GENRE, restaurant.getGenre());
-        cv.put(COLUMN_RESTAURANT_USER_RATING, restaurant.getUserRating());
-        cv.put(COLUMN_RESTAURANT_PRICE_LEVEL, restaurant.getPriceLevel());
-        cv.put(COLUMN_RESTAURANT_NOTES, restaurant.getNotes());
+        // Update existing row first, then insert if no row exists. Unlike REPLACE, this never deletes an existing row.
+        executeRestaurantStatement(mStatements.get(db, SQL_UPDATE_RESTAURANT), restaurant);
+        executeRestaurantStatement(mStatements.get(db, SQL_INSERT_RESTAURANT), restaurant);
+    }
 
-        db.replace(TABLE_RESTAURANTS, null, cv);
+    /**
+     * Bind restaurant fields to insert or update statement and execute it.  Both statements share the same parameter order.
+     * @param statement compiled insert or update statement
+     * @param restaurant Restaurant to bind
+     */
+    private void executeRestaurantStatement(SQLiteStatement statement, Restaurant restaurant){
+
+        statement.clearBindings();
+        StatementCache.bindString(statement, 1, restaurant.getName());
+        statement.bindLong(2, restaurant.getGenre());
+        statement.bindLong(3, restaurant.getUserRating());
+        statement.bindLong(4, restaurant.getPriceLevel());
+        StatementCache.bindString(statement, 5, restaurant.getNotes());
+        StatementCache.bindString(statement, 6, restaurant.getRestaurantId());
+        statement.execute();
+    }
+
+    /**
+     * Execute compiled statement with a single string parameter, or no parameters if value is null
+     * @param sql SQL statement
+     * @param value value to bind to the first parameter, or null if statement has no parameters
+     */
+    private void executeStatement(String sql, String value){
+
+        SQLiteStatement statement = mStatements.get(getDatabase(), sql);
+
+        statement.clearBindings();
+
+        if(value != null){
+            statement.bindString(1, value);
+        }
+
+        statement.execute();
     }
 
     /**
@@ -156,24 +573,164 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public void addRestaurant(Restaurant restaurant){
 
-        addRestaurant(mDb, restaurant);
+        // Genre counts are updated from the genre restaurant was stored under, if they're loaded
+        Map<Integer, Integer> counts = mCache.getGenreCounts();
+        Restaurant previous = (counts != null) ? getStoredRestaurant(restaurant.getRestaurantId()) : null;
+
+        addRestaurant(getDatabase(), restaurant);
+        mCache.onRestaurantSaved(restaurant, previous, counts);
+    }
+
+    /**
+     * Add or update a collection of restaurants, using one transaction per chunk of DEFAULT_IMPORT_CHUNK_SIZE restaurants
+     * @param restaurants Restaurants to add
+     */
+    public void addRestaurants(Collection<Restaurant> restaurants){
+
+        addRestaurants(restaurants, DEFAULT_IMPORT_CHUNK_SIZE, null);
+    }
+
+    /**
+     * Add or update a collection of restaurants. Restaurants are written in chunks, each in its own transaction, so a large
+     * import doesn't hold the database lock for its entire duration. If a chunk fails, previously written chunks are kept.
+     * @param restaurants Restaurants to add
+     * @param chunkSize number of restaurants to write per transaction
+     * @param listener listener notified after each chunk is written, or null
+     */
+    public void addRestaurants(Collection<Restaurant> restaurants, int chunkSize, OnImportProgressListener listener){
+
+        try{
+            addRestaurants(getDatabase(), restaurants, chunkSize, listener);
+        }
+        finally{
+            // Earlier chunks are kept if a later one fails, so drop cache either way
+            mCache.invalidateAll();
+        }
+
+        checkpoint();
     }
 
+    private void addRestaurants(SQLiteDatabase db, Collection<Restaurant> restaurants, int chunkSize, OnImportProgressListener listener){
+
+        if(chunkSize < 1){
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+
+        int total = restaurants.size();
+        int imported = 0;
+        Iterator<Restaurant> iterator = restaurants.iterator();
+
+        while(iterator.hasNext()){
+
+            db.beginTransaction();
+
+            try{
+                for(int i = 0; i < chunkSize && iterator.hasNext(); i++){
+                    addRestaurant(db, iterator.next());
+                    imported++;
+                }
+
+                db.setTransactionSuccessful();
+            }
+            finally{
+                db.endTransaction();
+            }
+
+            if(listener != null){
+                listener.onImportProgress(imported, total);
+            }
+        }
+    }
+
+    /**
+     * Get restaurant from database, including its visit count and last visit
+     * @param id restaurant id
+     * @return Restaurant with specified id
+     */
     public Restaurant getRestaurantById(String id){
 
-        Restaurant r = new Restaurant();
-        String selection = COLUMN_RESTAURANT_ID + " = '" + id + "'";
+        Restaurant r = mCache.getRestaurant(id);
+        if(r != null){
+            return r;
+        }
 
-        Cursor c = mDb.query(TABLE_RESTAURANTS, COLUMNS_RESTAURANT_TABLE, selection, null, null, null, null);
+        int generation = mCache.getGeneration();
+        r = getRestaurant(new Selection().equal(COLUMN_RESTAURANT_ID, id), null);
 
-        if(c.moveToFirst()){
+        if(r == null){
+            return new Restaurant();
+        }
 
-            r.setRestaurantId(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_ID)));
-            r.setName(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_NAME)));
-            r.setGenre(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_GENRE)));
-            r.setUserRating(c.getInt(c.getColumnIndex(COLUMN_RESTAURANT_USER_RATING)));
-            r.setPriceLevel(c.getInt(c.getColumnIndex(COLUMN_RESTAURANT_PRICE_LEVEL)));
-            r.setNotes(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_NOTES)));
+        mCache.putRestaurant(r, generation);
+        return r;
+    }
+
+    /**
+     * Get restaurant as currently stored, from cache if possible. Restaurant isn't added to the cache.
+     * @param id restaurant id
+     * @return stored restaurant, or null if no restaurant has the id
+     */
+    private Restaurant getStoredRestaurant(String id){
+
+        Restaurant r = mCache.getRestaurant(id);
+        return (r != null) ? r : getRestaurant(new Selection().equal(COLUMN_RESTAURANT_ID, id), null);
+    }
+
+    /**
+     * Pick a random restaurant. If the genre's list is cached it is picked from directly, otherwise matching restaurants
+     * are counted using the genre index, and only the selected row is read.
+     * @param genre genre code to pick from, or Restaurant.GENRE_ALL to pick from all restaurants
+     * @return randomly selected Restaurant, or null if no restaurants match
+     */
+    public Restaurant pickRandomRestaurant(int genre){
+
+        List<Restaurant> cached = mCache.getList(genre);
+        if(cached != null){
+            return cached.isEmpty() ? null : new Restaurant(cached.get(mRandom.nextInt(cached.size())));
+        }
+
+        Selection selection = new Selection();
+
+        if(genre != Restaurant.GENRE_ALL){
+            selection.equal(COLUMN_RESTAURANT_GENRE, genre);
+        }
+
+        String query = "SELECT COUNT(*) FROM " + TABLE_RESTAURANTS +
+                (selection.getSelection() != null ? " WHERE " + selection.getSelection() : "");
+
+        // Restaurants may be deleted on the write thread between counting and reading, leaving the offset past the end.
+        // Count again in that case, rather than reporting that no restaurants match.
+        while(true){
+
+            long count = DatabaseUtils.longForQuery(getDatabase(), query, selection.getArgs());
+
+            if(count == 0){
+                return null;
+            }
+
+            // LIMIT offset, 1
+            long offset = (long) (mRandom.nextDouble() * count);
+            Restaurant r = getRestaurant(selection, offset + ", 1");
+
+            if(r != null){
+                return r;
+            }
+        }
+    }
+
+    /**
+     * Get first restaurant matching selection
+     * @param selection selection for query
+     * @param limit limit clause for query, or null for no limit
+     * @return Restaurant, or null if no restaurant matches
+     */
+    private Restaurant getRestaurant(Selection selection, String limit){
+
+        Restaurant r = null;
+        Cursor c = getDatabase().query(TABLE_RESTAURANTS, COLUMNS_RESTAURANT_TABLE, selection.getSelection(), selection.getArgs(), null, null, null, limit);
+
+        if(c.moveToFirst()){
+            r = new RestaurantMapper(c).map();
         }
 
         c.close();
@@ -182,54 +739,120 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     /**
      * Get list of all Restaurants stored in database with specified genre, sorted in alphabetical order
-     * @param genre genre to search for
-     * @return list of restaurants
+     * @param genre genre code to search for
+     * @return unmodifiable list of restaurants
      */
-    public List<Restaurant> getRestaurantsByGenre(String genre){
+    public List<Restaurant> getRestaurantsByGenre(int genre){
 
-        String filter = COLUMN_RESTAURANT_GENRE + " = '" + genre + "'";
-        return getRestaurants(filter);
+        return getRestaurants(genre);
     }
 
     /**
      * Get list of all Restaurants stored in database, sorted in alphabetical order
-     * @return list of all restaurants
+     * @return unmodifiable list of all restaurants
      */
     public List<Restaurant> getAllRestaurants(){
-        return getRestaurants(null);
+        return getRestaurants(Restaurant.GENRE_ALL);
     }
 
     /**
-     * Get restaurants from database
-     * @param filter selection for query, formatted as SQL string (minus the WHERE clause). Passing in null returns all restaurants with no filter.
-     * @return list of restaurants
+     * Get restaurants from cache, or from database if the filter isn't cached. The list and the restaurants in it may be
+     * shared with the cache, so must be copied before being modified.
+     * @param genre genre code to filter by, or Restaurant.GENRE_ALL for all restaurants
+     * @return unmodifiable list of restaurants
      */
-    private List<Restaurant> getRestaurants(String filter){
+    private List<Restaurant> getRestaurants(int genre){
 
-        List<Restaurant> restaurants = new ArrayList<Restaurant>();
-        String[] columns = new String[] {COLUMN_RESTAURANT_ID, COLUMN_RESTAURANT_NAME, COLUMN_RESTAURANT_GENRE, COLUMN_RESTAURANT_USER_RATING, COLUMN_RESTAURANT_PRICE_LEVEL};
+        List<Restaurant> restaurants = mCache.getList(genre);
+        if(restaurants != null){
+            return restaurants;
+        }
+
+        // Reading all restaurants costs the same scan as partitioning them, so every filter is cached at once
+        if(genre == Restaurant.GENRE_ALL){
+            return getGenrePartitions().get(Restaurant.GENRE_ALL);
+        }
 
-        Cursor c = mDb.query(TABLE_RESTAURANTS, columns, filter, null, null, null, COLUMN_RESTAURANT_NAME);
+        Selection selection = new Selection().equal(COLUMN_RESTAURANT_GENRE, genre);
 
-        if(c.moveToFirst()){
+        int generation = mCache.getGeneration();
+        Cursor c = queryRestaurants(selection);
+        restaurants = new RestaurantMapper(c).mapAll();
+        c.close();
+
+        mCache.putList(genre, restaurants, generation);
+        return Collections.unmodifiableList(restaurants);
+    }
+
+    /**
+     * Read all restaurants in a single pass and partition them by genre in memory, so the list of all restaurants and
+     * the list for every genre come from the same snapshot. Restaurants are read in name order using the name index,
+     * so each partition is already sorted alphabetically. The partition is cached until the next write.
+     * @return unmodifiable lists of restaurants keyed by genre code, with the list of all restaurants under
+     * Restaurant.GENRE_ALL. Genres with no restaurants have no entry.
+     */
+    public Map<Integer, List<Restaurant>> getGenrePartitions(){
+
+        Map<Integer, List<Restaurant>> partitions = mCache.getPartitions();
+        if(partitions != null){
+            return partitions;
+        }
 
-            while(!c.isAfterLast()){
+        int generation = mCache.getGeneration();
+        Cursor c = queryRestaurants(new Selection());
+        List<Restaurant> all = new RestaurantMapper(c).mapAll();
+        c.close();
 
-                Restaurant r = new Restaurant();
-                r.setRestaurantId(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_ID)));
-                r.setName(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_NAME)));
-                r.setGenre(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_GENRE)));
-                r.setUserRating(c.getInt(c.getColumnIndex(COLUMN_RESTAURANT_USER_RATING)));
-                r.setPriceLevel(c.getInt(c.getColumnIndex(COLUMN_RESTAURANT_PRICE_LEVEL)));
+        Map<Integer, List<Restaurant>> byGenre = new HashMap<Integer, List<Restaurant>>();
 
-                restaurants.add(r);
+        for(Restaurant r : all){
 
-                c.moveToNext();
+            List<Restaurant> genre = byGenre.get(r.getGenre());
+            if(genre == null){
+                genre = new ArrayList<Restaurant>();
+                byGenre.put(r.getGenre(), genre);
             }
+
+            genre.add(r);
+        }
+
+        return mCache.putPartitions(all, byGenre, generation);
+    }
+
+    /**
+     * Get number of restaurants in each genre, counted in a single query. Counts are cached and kept up to date as
+     * restaurants are saved and deleted, so only the first call reads the database.
+     * @return unmodifiable number of restaurants keyed by genre code. Genres with no restaurants have no entry.
+     */
+    public Map<Integer, Integer> getGenreCounts(){
+
+        Map<Integer, Integer> counts = mCache.getGenreCounts();
+        if(counts != null){
+            return counts;
         }
+
+        int generation = mCache.getGeneration();
+        Cursor c = getDatabase().rawQuery(SQL_COUNT_RESTAURANTS_BY_GENRE, null);
+        counts = new HashMap<Integer, Integer>(c.getCount() * 2);
+
+        while(c.moveToNext()){
+            counts.put(c.getInt(0), c.getInt(1));
+        }
+
         c.close();
+        return mCache.putGenreCounts(counts, generation);
+    }
+
+    /**
+     * Query restaurants from database
+     * @param selection selection for query. An empty selection returns all restaurants with no filter.
+     * @return cursor over restaurants, sorted in alphabetical order
+     */
+    private Cursor queryRestaurants(Selection selection){
 
-        return restaurants;
+        String[] columns = new String[] {COLUMN_RESTAURANT_ID, COLUMN_RESTAURANT_NAME, COLUMN_RESTAURANT_GENRE, COLUMN_RESTAURANT_USER_RATING, COLUMN_RESTAURANT_PRICE_LEVEL, COLUMN_RESTAURANT_VISIT_COUNT, COLUMN_RESTAURANT_LAST_VISIT};
+
+        return getDatabase().query(TABLE_RESTAURANTS, columns, selection.getSelection(), selection.getArgs(), null, null, ORDER_RESTAURANT_NAME);
     }
 
     /**
@@ -238,11 +861,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public void deleteRestaurantById(String id){
 
-        String selection = COLUMN_RESTAURANT_ID + " = '" + id + "'";
-        mDb.delete(TABLE_RESTAURANTS, selection, null);
+        Map<Integer, Integer> counts = mCache.getGenreCounts();
+        Restaurant previous = (counts != null) ? getStoredRestaurant(id) : null;
 
-        selection = COLUMN_HISTORY_RESTAURANT_ID + " = '" + id + "'";
-        mDb.delete(TABLE_HISTORY, selection, null);
+        executeStatement(SQL_DELETE_RESTAURANT, id);
+        executeStatement(SQL_DELETE_HISTORY_BY_RESTAURANT, id);
+        mCache.onRestaurantDeleted(id, previous, counts);
     }
 
     /**
@@ -250,8 +874,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public void deleteAllRestaurants(){
 
-        mDb.delete(TABLE_RESTAURANTS, null, null);
+        executeStatement(SQL_DELETE_ALL_RESTAURANTS, null);
         deleteRestaurantHistory();
+        mCache.onAllDeleted();
     }
 
     /**
@@ -260,11 +885,16 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public void addRestaurantHistory(String id){
 
-        ContentValues cv = new ContentValues();
-        cv.put(COLUMN_HISTORY_RESTAURANT_ID, id);
-        cv.put(COLUMN_HISTORY_DATE, new Date().getTime());
+        SQLiteStatement statement = mStatements.get(getDatabase(), SQL_INSERT_HISTORY);
+        Date date = new Date();
+
+        statement.clearBindings();
+        StatementCache.bindString(statement, 1, id);
+        statement.bindLong(2, date.getTime());
+        statement.executeInsert();
 
-        mDb.insert(TABLE_HISTORY, null, cv);
+        // Visit count and last visit have changed, which only affects cached copies of this restaurant
+        mCache.onRestaurantVisited(id, date);
     }
 
     /**
@@ -274,37 +904,103 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      */
     public List<RestaurantHistory> getHistoryByRestaurant(String id){
 
-        List<RestaurantHistory> history = new ArrayList<RestaurantHistory>();
-        String selection = COLUMN_HISTORY_RESTAURANT_ID + " = '" + id + "'";
+        Selection selection = new Selection().equal(COLUMN_HISTORY_RESTAURANT_ID, id);
         String order = COLUMN_HISTORY_DATE + " DESC";
 
-        Cursor c = mDb.query(TABLE_HISTORY, COLUMNS_HISTORY_TABLE, selection, null, null, null, order);
+        Cursor c = getDatabase().query(TABLE_HISTORY, COLUMNS_HISTORY_TABLE, selection.getSelection(), selection.getArgs(), null, null, order);
+        List<RestaurantHistory> history = new RestaurantHistoryMapper(c).mapAll();
+        c.close();
 
-        if(c.moveToFirst()){
+        return history;
+    }
 
-            while(!c.isAfterLast()){
+    /**
+     * Delete all selection history, and reset visit count and last visit of every restaurant
+     */
+    public void deleteRestaurantHistory(){
 
-                history.add(new RestaurantHistory(
-                        c.getInt(c.getColumnIndex(COLUMN_HISTORY_ID)),
-                        c.getString(c.getColumnIndex(COLUMN_HISTORY_RESTAURANT_ID)),
-                        c.getString(c.getColumnIndex(COLUMN_HISTORY_DATE))));
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
 
-                c.moveToNext();
-            }
+        try{
+            // Reset visits first, so the delete trigger is skipped for every row
+            executeStatement(SQL_RESET_VISITS, null);
+            executeStatement(SQL_DELETE_ALL_HISTORY, null);
+            db.setTransactionSuccessful();
+        }
+        finally{
+            db.endTransaction();
         }
 
-        c.close();
-        return history;
+        mCache.onHistoryDeleted();
+        checkpoint();
     }
 
-    public void deleteRestaurantHistory(){
+    /**
+     * Get selection history for all restaurants, sorted by date of selection in descending order
+     * @return list of RestaurantHistory objects
+     */
+    public List<RestaurantHistory> getAllHistory(){
 
-        mDb.delete(TABLE_HISTORY, null, null);
+        return getHistory(new Selection(), null);
     }
 
-    public List<RestaurantHistory> getAllHistory(){
+    /**
+     * Get one page of selection history, sorted by date of selection then id in descending order. Pages are keyed on the
+     * last row of the previous page, so a page is found using the date index rather than skipping over earlier rows.
+     * @param after last row of previous page. Only rows after it are returned. Null to start from the most recent selection.
+     * @param from first row of this page, if it has been loaded before. Rows before it are excluded. Null for no bound.
+     * @param until last row of this page, if it has been loaded before. Rows after it are excluded. Null to read up to limit rows.
+     * @param limit maximum number of rows to return, or 0 for no limit
+     * @return list of RestaurantHistory objects
+     */
+    public List<RestaurantHistory> getHistoryPage(RestaurantHistory after, RestaurantHistory from, RestaurantHistory until, int limit){
+
+        String date = "h." + COLUMN_HISTORY_DATE;
+        String id = "h." + COLUMN_HISTORY_ID;
+        Selection selection = new Selection();
+
+        if(after != null){
+            String afterDate = Long.toString(after.getDate().getTime());
+            selection.where(date + " <= ? AND (" + date + " < ? OR " + id + " < ?)", afterDate, afterDate, Integer.toString(after.getId()));
+        }
+
+        if(from != null){
+            String fromDate = Long.toString(from.getDate().getTime());
+            selection.where(date + " <= ? AND (" + date + " < ? OR " + id + " <= ?)", fromDate, fromDate, Integer.toString(from.getId()));
+        }
+
+        if(until != null){
+            String untilDate = Long.toString(until.getDate().getTime());
+            selection.where(date + " >= ? AND (" + date + " > ? OR " + id + " >= ?)", untilDate, untilDate, Integer.toString(until.getId()));
+        }
+
+        return getHistory(selection, limit > 0 ? Integer.toString(limit) : null);
+    }
+
+    /**
+     * Get selection history joined with restaurant info
+     * @param selection selection on history (h) and restaurant (r) tables. An empty selection returns all history.
+     * @param limit limit clause for query, or null for no limit
+     * @return list of RestaurantHistory objects, sorted by date then id in descending order
+     */
+    private List<RestaurantHistory> getHistory(Selection selection, String limit){
+
+        Cursor c = queryHistory(selection, limit);
+        List<RestaurantHistory> historyList = new RestaurantHistoryMapper(c).mapAll();
+        c.close();
+
+        return historyList;
+    }
+
+    /**
+     * Query selection history joined with restaurant info
+     * @param selection selection on history (h) and restaurant (r) tables. An empty selection returns all history.
+     * @param limit limit clause for query, or null for no limit
+     * @return cursor over history, sorted by date then id in descending order
+     */
+    private Cursor queryHistory(Selection selection, String limit){
 
-        List<RestaurantHistory> historyList = new ArrayList<RestaurantHistory>();
         String query =
                 "SELECT " +
                     "h." + COLUMN_HISTORY_ID + ", " +
@@ -319,33 +1015,24 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     TABLE_RESTAURANTS + " as r " +
                 "ON " +
                     "h." + COLUMN_HISTORY_RESTAURANT_ID + " = r." + COLUMN_RESTAURANT_ID + " " +
+                (selection.getSelection() != null ? "WHERE " + selection.getSelection() + " " : "") +
                 "ORDER BY " +
-                    COLUMN_HISTORY_DATE + " DESC";
-
-        Cursor c = mDb.rawQuery(query, null);
-
-        if(c.moveToFirst()){
-
-            while(!c.isAfterLast()){
-
-                Restaurant r = new Restaurant();
-                r.setRestaurantId(c.getString(c.getColumnIndex(COLUMN_HISTORY_RESTAURANT_ID)));
-                r.setName(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_NAME)));
-                r.setGenre(c.getString(c.getColumnIndex(COLUMN_RESTAURANT_GENRE)));
-                r.setUserRating(c.getInt(c.getColumnIndex(COLUMN_RESTAURANT_USER_RATING)));
-
-                RestaurantHistory history = new RestaurantHistory(
-                        c.getInt(c.getColumnIndex(COLUMN_HISTORY_ID)),
-                        c.getString(c.getColumnIndex(COLUMN_HISTORY_DATE)),
-                        r);
+                    "h." + COLUMN_HISTORY_DATE + " DESC, " +
+                    "h." + COLUMN_HISTORY_ID + " DESC" +
+                (limit != null ? " LIMIT " + limit : "");
 
-                historyList.add(history);
-                c.moveToNext();
-            }
-        }
-        c.close();
-
-        return historyList;
+        return getDatabase().rawQuery(query, selection.getArgs());
     }
 
+    /**
+     * Listener for progress of bulk restaurant imports
+     */
+    public static interface OnImportProgressListener {
+        /**
+         * Called after each chunk of restaurants has been committed
+         * @param imported number of restaurants written so far
+         * @param total total number of restaurants being imported
+         */
+        void onImportProgress(int imported, int total);
+    }
 }
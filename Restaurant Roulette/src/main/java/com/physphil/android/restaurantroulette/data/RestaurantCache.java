@@ -0,0 +1,421 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.data;
+
+import android.support.v4.util.LruCache;
+
+import com.physphil.android.restaurantroulette.models.Restaurant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory cache of restaurants read from the database, kept coherent by the DatabaseHelper write paths.
+ * Holds a bounded cache of restaurants by id, and an LRU cache of immutable restaurant lists for the most recently
+ * used genre filters, so switching back and forth between filters doesn't go back to the database. When all restaurants
+ * have been read in one pass, the partition of them by genre serves every filter until the next write. The number of
+ * restaurants in each genre is kept across writes, and updated from the genre each written restaurant was stored under.
+ *
+ * Each invalidation starts a new generation. A result read from the database is only cached if no write has happened
+ * since the read started, so a read racing a write can't put stale data back into the cache.
+ */
+class RestaurantCache {
+
+    private static final int MAX_RESTAURANTS = 100;
+
+    private final LruCache<String, Restaurant> mById = new LruCache<String, Restaurant>(MAX_RESTAURANTS);
+    private final LruCache<Integer, List<Restaurant>> mByFilter;
+
+    // All restaurants partitioned by genre, with the list of all restaurants under Restaurant.GENRE_ALL
+    private Map<Integer, List<Restaurant>> mPartitions;
+
+    // Number of restaurants in each genre. Replaced rather than modified, so it can be shared with callers.
+    private Map<Integer, Integer> mGenreCounts;
+
+    private int mGeneration;
+
+    /**
+     * @param maxFilters number of genre filter lists to keep
+     */
+    RestaurantCache(int maxFilters){
+        mByFilter = new LruCache<Integer, List<Restaurant>>(maxFilters);
+    }
+
+    /**
+     * @return current generation, to pass back when caching a result read from the database
+     */
+    synchronized int getGeneration(){
+        return mGeneration;
+    }
+
+    /**
+     * @param id restaurant id
+     * @return copy of cached restaurant, or null if not cached
+     */
+    Restaurant getRestaurant(String id){
+
+        Restaurant r = mById.get(id);
+        return r != null ? new Restaurant(r) : null;
+    }
+
+    /**
+     * Cache restaurant read from database
+     * @param restaurant restaurant
+     * @param generation generation when the read started
+     */
+    synchronized void putRestaurant(Restaurant restaurant, int generation){
+
+        if(generation == mGeneration){
+            mById.put(restaurant.getRestaurantId(), new Restaurant(restaurant));
+        }
+    }
+
+    /**
+     * @param genre genre code, or Restaurant.GENRE_ALL for all restaurants
+     * @return unmodifiable cached list, or null if not cached. Restaurants in the list are shared and must not be modified.
+     */
+    synchronized List<Restaurant> getList(int genre){
+
+        if(mPartitions != null){
+            List<Restaurant> list = mPartitions.get(genre);
+            return list != null ? list : Collections.<Restaurant>emptyList();
+        }
+
+        return mByFilter.get(genre);
+    }
+
+    /**
+     * Cache list read from database
+     * @param genre genre code, or Restaurant.GENRE_ALL for all restaurants
+     * @param list restaurants matching filter
+     * @param generation generation when the read started
+     */
+    synchronized void putList(int genre, List<Restaurant> list, int generation){
+
+        if(generation == mGeneration){
+            mByFilter.put(genre, Collections.unmodifiableList(new ArrayList<Restaurant>(list)));
+        }
+    }
+
+    /**
+     * @return unmodifiable partition of all restaurants by genre, or null if not cached
+     */
+    synchronized Map<Integer, List<Restaurant>> getPartitions(){
+        return mPartitions;
+    }
+
+    /**
+     * Cache all restaurants read from database, partitioned by genre
+     * @param all all restaurants
+     * @param byGenre restaurants of each genre which has any
+     * @param generation generation when the read started
+     * @return unmodifiable partition, with the list of all restaurants under Restaurant.GENRE_ALL
+     */
+    synchronized Map<Integer, List<Restaurant>> putPartitions(List<Restaurant> all, Map<Integer, List<Restaurant>> byGenre, int generation){
+
+        Map<Integer, List<Restaurant>> partitions = new HashMap<Integer, List<Restaurant>>(byGenre.size() * 2);
+        partitions.put(Restaurant.GENRE_ALL, Collections.unmodifiableList(all));
+
+        for(Map.Entry<Integer, List<Restaurant>> entry : byGenre.entrySet()){
+            partitions.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+
+        partitions = Collections.unmodifiableMap(partitions);
+
+        if(generation == mGeneration){
+
+            mPartitions = partitions;
+
+            Map<Integer, Integer> counts = new HashMap<Integer, Integer>(byGenre.size() * 2);
+            for(Map.Entry<Integer, List<Restaurant>> entry : byGenre.entrySet()){
+                counts.put(entry.getKey(), entry.getValue().size());
+            }
+
+            mGenreCounts = Collections.unmodifiableMap(counts);
+        }
+
+        return partitions;
+    }
+
+    /**
+     * @return unmodifiable number of restaurants in each genre, or null if not cached
+     */
+    synchronized Map<Integer, Integer> getGenreCounts(){
+        return mGenreCounts;
+    }
+
+    /**
+     * Cache genre counts read from database
+     * @param counts number of restaurants in each genre which has any
+     * @param generation generation when the read started
+     * @return unmodifiable counts
+     */
+    synchronized Map<Integer, Integer> putGenreCounts(Map<Integer, Integer> counts, int generation){
+
+        counts = Collections.unmodifiableMap(counts);
+
+        if(generation == mGeneration){
+            mGenreCounts = counts;
+        }
+
+        return counts;
+    }
+
+    /**
+     * Write through a saved restaurant. Lists are dropped, as the restaurant may have moved between them.
+     * @param restaurant restaurant which was saved
+     * @param previous restaurant as stored before it was saved, or null if it was new
+     * @param counts genre counts when previous was looked up
+     */
+    synchronized void onRestaurantSaved(Restaurant restaurant, Restaurant previous, Map<Integer, Integer> counts){
+
+        mGeneration++;
+        mById.put(restaurant.getRestaurantId(), new Restaurant(restaurant));
+        mByFilter.evictAll();
+        mPartitions = null;
+        moveGenreCount(counts, previous, restaurant);
+    }
+
+    /**
+     * Drop a restaurant which was deleted, and all lists
+     * @param id restaurant id
+     * @param previous restaurant as stored before it was deleted, or null if it wasn't stored
+     * @param counts genre counts when previous was looked up
+     */
+    synchronized void onRestaurantDeleted(String id, Restaurant previous, Map<Integer, Integer> counts){
+
+        invalidate(id);
+        moveGenreCount(counts, previous, null);
+    }
+
+    /**
+     * Record a visit to a restaurant in the cached restaurant and every cached list which contains it, the same way the
+     * history trigger updates the row
+     * @param id restaurant id
+     * @param date date of visit
+     */
+    synchronized void onRestaurantVisited(final String id, final Date date){
+
+        mGeneration++;
+
+        patchAll(new Patch() {
+
+            @Override
+            boolean affects(Restaurant restaurant) {
+                return restaurant.getRestaurantId().equals(id);
+            }
+
+            @Override
+            void apply(Restaurant restaurant) {
+
+                restaurant.setVisitCount(restaurant.getVisitCount() + 1);
+
+                if(restaurant.getLastVisit() == null || restaurant.getLastVisit().before(date)){
+                    restaurant.setLastVisit(new Date(date.getTime()));
+                }
+            }
+        });
+    }
+
+    /**
+     * Reset visits of every cached restaurant, after all history was deleted. Genre membership doesn't change, so
+     * lists, partitions and genre counts are kept.
+     */
+    synchronized void onHistoryDeleted(){
+
+        mGeneration++;
+
+        patchAll(new Patch() {
+
+            @Override
+            boolean affects(Restaurant restaurant) {
+                return restaurant.getVisitCount() != 0 || restaurant.getLastVisit() != null;
+            }
+
+            @Override
+            void apply(Restaurant restaurant) {
+
+                restaurant.setVisitCount(0);
+                restaurant.setLastVisit(null);
+            }
+        });
+    }
+
+    /**
+     * Patch cached restaurants and every cached list which contains them. Restaurants in lists are shared, so each
+     * affected restaurant is replaced by a patched copy and only the lists containing one are rebuilt.
+     * @param patch patch to apply
+     */
+    private void patchAll(Patch patch){
+
+        // Snapshots are in least recently used order, so putting every entry back keeps their order
+        for(Map.Entry<String, Restaurant> entry : mById.snapshot().entrySet()){
+            mById.put(entry.getKey(), patch.affects(entry.getValue()) ? patch.copy(entry.getValue()) : entry.getValue());
+        }
+
+        for(Map.Entry<Integer, List<Restaurant>> entry : mByFilter.snapshot().entrySet()){
+            mByFilter.put(entry.getKey(), patch.applyTo(entry.getValue()));
+        }
+
+        if(mPartitions != null){
+
+            Map<Integer, List<Restaurant>> partitions = new HashMap<Integer, List<Restaurant>>(mPartitions);
+            for(Map.Entry<Integer, List<Restaurant>> entry : partitions.entrySet()){
+                entry.setValue(patch.applyTo(entry.getValue()));
+            }
+
+            mPartitions = Collections.unmodifiableMap(partitions);
+        }
+    }
+
+    /**
+     * Change made to cached restaurants by a write which doesn't move restaurants between lists
+     */
+    private static abstract class Patch {
+
+        /**
+         * @param restaurant cached restaurant, which must not be modified
+         * @return true if restaurant is changed by the write
+         */
+        abstract boolean affects(Restaurant restaurant);
+
+        /**
+         * @param restaurant copy of an affected restaurant, to modify
+         */
+        abstract void apply(Restaurant restaurant);
+
+        Restaurant copy(Restaurant restaurant){
+
+            Restaurant patched = new Restaurant(restaurant);
+            apply(patched);
+            return patched;
+        }
+
+        /**
+         * @param list unmodifiable list of restaurants
+         * @return list with affected restaurants replaced by patched copies, or the same list if it contains none
+         */
+        List<Restaurant> applyTo(List<Restaurant> list){
+
+            List<Restaurant> patched = null;
+
+            for(int i = 0; i < list.size(); i++){
+
+                if(affects(list.get(i))){
+
+                    if(patched == null){
+                        patched = new ArrayList<Restaurant>(list);
+                    }
+
+                    patched.set(i, copy(list.get(i)));
+                }
+            }
+
+            return (patched != null) ? Collections.unmodifiableList(patched) : list;
+        }
+    }
+
+    /**
+     * Drop a restaurant which changed, and all lists
+     * @param id restaurant id
+     */
+    synchronized void invalidate(String id){
+
+        mGeneration++;
+        mById.remove(id);
+        mByFilter.evictAll();
+        mPartitions = null;
+    }
+
+    /**
+     * Drop everything, after a bulk change
+     */
+    synchronized void invalidateAll(){
+
+        mGeneration++;
+        mById.evictAll();
+        mByFilter.evictAll();
+        mPartitions = null;
+        mGenreCounts = null;
+    }
+
+    /**
+     * Drop everything, after all restaurants were deleted. Genre counts are known to be empty.
+     */
+    synchronized void onAllDeleted(){
+
+        invalidateAll();
+        mGenreCounts = Collections.emptyMap();
+    }
+
+    /**
+     * Move a written restaurant between genre counts. If the counts were replaced since the restaurant's previous genre
+     * was looked up, they may already include the write, so are dropped instead.
+     * @param counts genre counts when previous was looked up
+     * @param from restaurant as stored before the write, or null if it wasn't stored
+     * @param to restaurant as stored after the write, or null if it was deleted
+     */
+    private void moveGenreCount(Map<Integer, Integer> counts, Restaurant from, Restaurant to){
+
+        if(mGenreCounts == null || mGenreCounts != counts){
+            mGenreCounts = null;
+            return;
+        }
+
+        Map<Integer, Integer> updated = new HashMap<Integer, Integer>(mGenreCounts);
+
+        if(from != null){
+            addGenreCount(updated, from.getGenre(), -1);
+        }
+
+        if(to != null){
+            addGenreCount(updated, to.getGenre(), 1);
+        }
+
+        mGenreCounts = Collections.unmodifiableMap(updated);
+    }
+
+    private static void addGenreCount(Map<Integer, Integer> counts, int genre, int delta){
+
+        Integer count = counts.get(genre);
+        int updated = ((count != null) ? count : 0) + delta;
+
+        if(updated > 0){
+            counts.put(genre, updated);
+        }
+        else{
+            counts.remove(genre);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+
+        return "RestaurantCache[ids hits=" + mById.hitCount() + " misses=" + mById.missCount() +
+                ", filters hits=" + mByFilter.hitCount() + " misses=" + mByFilter.missCount() +
+                " size=" + mByFilter.size() + "/" + mByFilter.maxSize() + "]";
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+package com.physphil.android.restaurantroulette.data;
+
+import android.database.Cursor;
+
+import com.physphil.android.restaurantroulette.models.RestaurantHistory;
+
+import java.util.Date;
+
+/**
+ * Maps rows of the RestaurantHistory table, optionally joined with restaurant name, genre and rating, to RestaurantHistory objects
+ */
+class RestaurantHistoryMapper extends CursorMapper<RestaurantHistory> {
+
+    private final int mId;
+    private final int mRestaurantId;
+    private final int mDate;
+    private final int mName;
+    private final int mGenre;
+    private final int mUserRating;
+
+    RestaurantHistoryMapper(Cursor cursor){
+        super(cursor);
+
+        mId = index(DatabaseHelper.COLUMN_HISTORY_ID);
+        mRestaurantId = index(DatabaseHelper.COLUMN_HISTORY_RESTAURANT_ID);
+        mDate = index(DatabaseHelper.COLUMN_HISTORY_DATE);
+        mName = index(DatabaseHelper.COLUMN_RESTAURANT_NAME);
+        mGenre = index(DatabaseHelper.COLUMN_RESTAURANT_GENRE);
+        mUserRating = index(DatabaseHelper.COLUMN_RESTAURANT_USER_RATING);
+    }
+
+    @Override
+    protected RestaurantHistory newInstance(){
+
+        return new RestaurantHistory();
+    }
+
+    @Override
+    protected void fill(RestaurantHistory h){
+
+        h.setId(mCursor.getInt(mId));
+        h.setRestaurantId(mCursor.getString(mRestaurantId));
+        h.setDate(new Date(mCursor.getLong(mDate)));
+
+        if(mName >= 0) h.setName(mCursor.getString(mName));
+        if(mGenre >= 0) h.setGenre(mCursor.getInt(mGenre));
+        if(mUserRating >= 0) h.setUserRating(mCursor.getInt(mUserRating));
+    }
+}
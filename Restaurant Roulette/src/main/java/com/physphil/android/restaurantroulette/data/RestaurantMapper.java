@@ -0,0 +1,79 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+package com.physphil.android.restaurantroulette.data;
+
+import android.database.Cursor;
+
+import com.physphil.android.restaurantroulette.models.Restaurant;
+
+import java.util.Date;
+
+/**
+ * Maps rows of the Restaurants table to Restaurant objects
+ */
+class RestaurantMapper extends CursorMapper<Restaurant> {
+
+    private final int mId;
+    private final int mName;
+    private final int mGenre;
+    private final int mUserRating;
+    private final int mPriceLevel;
+    private final int mNotes;
+    private final int mVisitCount;
+    private final int mLastVisit;
+
+    RestaurantMapper(Cursor cursor){
+        super(cursor);
+
+        mId = index(DatabaseHelper.COLUMN_RESTAURANT_ID);
+        mName = index(DatabaseHelper.COLUMN_RESTAURANT_NAME);
+        mGenre = index(DatabaseHelper.COLUMN_RESTAURANT_GENRE);
+        mUserRating = index(DatabaseHelper.COLUMN_RESTAURANT_USER_RATING);
+        mPriceLevel = index(DatabaseHelper.COLUMN_RESTAURANT_PRICE_LEVEL);
+        mNotes = index(DatabaseHelper.COLUMN_RESTAURANT_NOTES);
+        mVisitCount = index(DatabaseHelper.COLUMN_RESTAURANT_VISIT_COUNT);
+        mLastVisit = index(DatabaseHelper.COLUMN_RESTAURANT_LAST_VISIT);
+    }
+
+    @Override
+    protected Restaurant newInstance(){
+
+        // Id is set by fill(), so skip generating a random id which would be overwritten anyway
+        return new Restaurant((String) null);
+    }
+
+    @Override
+    protected void fill(Restaurant r){
+
+        r.setRestaurantId(mCursor.getString(mId));
+
+        if(mName >= 0) r.setName(mCursor.getString(mName));
+        if(mGenre >= 0) r.setGenre(mCursor.getInt(mGenre));
+        if(mUserRating >= 0) r.setUserRating(mCursor.getInt(mUserRating));
+        if(mPriceLevel >= 0) r.setPriceLevel(mCursor.getInt(mPriceLevel));
+        if(mNotes >= 0) r.setNotes(mCursor.getString(mNotes));
+        if(mVisitCount >= 0) r.setVisitCount(mCursor.getInt(mVisitCount));
+
+        if(mLastVisit >= 0){
+            r.setLastVisit(mCursor.isNull(mLastVisit) ? null : new Date(mCursor.getLong(mLastVisit)));
+        }
+    }
+}
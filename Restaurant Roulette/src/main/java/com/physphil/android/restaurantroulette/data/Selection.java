@@ -0,0 +1,75 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a WHERE clause using bound parameters instead of string literals, so the SQL text is the same for every
+ * value and SQLite can reuse the compiled statement. Conditions are joined with AND.
+ */
+class Selection {
+
+    private final StringBuilder mSelection = new StringBuilder();
+    private final List<String> mArgs = new ArrayList<String>();
+
+    Selection equal(String column, String value){
+        return where(column + " = ?", value);
+    }
+
+    Selection equal(String column, long value){
+        return where(column + " = ?", Long.toString(value));
+    }
+
+    /**
+     * Add condition to selection
+     * @param condition SQL condition with a ? for each value
+     * @param values values to bind, in order
+     * @return this selection
+     */
+    Selection where(String condition, String... values){
+
+        if(mSelection.length() > 0){
+            mSelection.append(" AND ");
+        }
+
+        mSelection.append("(").append(condition).append(")");
+        mArgs.addAll(Arrays.asList(values));
+        return this;
+    }
+
+    /**
+     * @return selection formatted as SQL string (minus the WHERE clause), or null if there are no conditions
+     */
+    String getSelection(){
+        return mSelection.length() > 0 ? mSelection.toString() : null;
+    }
+
+    /**
+     * @return arguments to bind to selection, or null if there are no conditions
+     */
+    String[] getArgs(){
+        return mArgs.isEmpty() ? null : mArgs.toArray(new String[mArgs.size()]);
+    }
+}
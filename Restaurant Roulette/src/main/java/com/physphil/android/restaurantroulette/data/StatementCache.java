@@ -0,0 +1,125 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of compiled SQL statements, so frequently used statements are only prepared once per thread and database.
+ * Each thread gets its own statements, so a statement is never shared and callers don't need to lock it while binding
+ * and executing. Holding a lock while the statement waits for a database connection could otherwise deadlock against a
+ * thread which holds the connection in a transaction and wants the same statement.
+ */
+class StatementCache {
+
+    private final ThreadLocal<Statements> mStatements = new ThreadLocal<Statements>();
+
+    // Every statement compiled on any thread, so they can all be closed. Guarded by this.
+    private final List<SQLiteStatement> mAll = new ArrayList<SQLiteStatement>();
+    private int mGeneration;
+
+    /**
+     * Get compiled statement for sql, compiling it if the calling thread doesn't have it cached yet.
+     * The statement must only be used on the calling thread.
+     * @param db database statement will be executed against
+     * @param sql SQL statement, using ? for bound parameters
+     * @return compiled statement
+     */
+    SQLiteStatement get(SQLiteDatabase db, String sql){
+
+        int generation;
+        synchronized(this){
+            generation = mGeneration;
+        }
+
+        // Statements are only valid for the database they were compiled against, and until they are cleared
+        Statements statements = mStatements.get();
+        if(statements == null || statements.db != db || statements.generation != generation){
+            statements = new Statements(db, generation);
+            mStatements.set(statements);
+        }
+
+        SQLiteStatement statement = statements.map.get(sql);
+
+        if(statement == null){
+            statement = db.compileStatement(sql);
+            statements.map.put(sql, statement);
+
+            synchronized(this){
+                mAll.add(statement);
+            }
+        }
+
+        return statement;
+    }
+
+    /**
+     * Close all cached statements, on every thread
+     */
+    synchronized void clear(){
+
+        for(SQLiteStatement statement : mAll){
+            statement.close();
+        }
+
+        mAll.clear();
+        mGeneration++;
+    }
+
+    /**
+     * Bind string to statement, binding null if the value is null
+     * @param statement statement
+     * @param index 1-based index of parameter
+     * @param value value to bind
+     */
+    static void bindString(SQLiteStatement statement, int index, String value){
+
+        if(value != null){
+            statement.bindString(index, value);
+        }
+        else{
+            statement.bindNull(index);
+        }
+    }
+
+    /**
+     * Statements compiled by one thread
+     */
+    private static class Statements {
+
+        final Map<String, SQLiteStatement> map = new HashMap<String, SQLiteStatement>();
+        final SQLiteDatabase db;
+        final int generation;
+
+        Statements(SQLiteDatabase db, int generation){
+
+            this.db = db;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+
+package com.physphil.android.restaurantroulette.models;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.physphil.android.restaurantroulette.R;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Registry of genres, mapping the code stored in database for each genre to its label and its position in spinners.
+ * Loaded from resources once, and shared by every caller. Genre codes are the Restaurant.GENRE_ constants.
+ */
+public class GenreRegistry {
+
+    /**
+     * Position of All Restaurants in the list of filter labels. Genres follow it, in spinner order.
+     */
+    public static final int POSITION_ALL = 0;
+
+    private static volatile GenreRegistry mInstance;
+
+    private final int[] mCodes;
+    private final SparseArray<String> mLabels;
+    private final SparseIntArray mPositions;
+    private final List<String> mLabelList;
+    private final List<String> mFilterLabels;
+
+    /**
+     * Get shared GenreRegistry, loading it the first time it is requested. Safe to call from any thread.
+     * @param context context
+     * @return shared instance
+     */
+    public static GenreRegistry getInstance(Context context){
+
+        GenreRegistry registry = mInstance;
+
+        if(registry == null){
+            registry = new GenreRegistry(context.getApplicationContext().getResources());
+            mInstance = registry;
+        }
+
+        return registry;
+    }
+
+    /**
+     * Drop loaded labels, e.g. when the locale changes. Registry is loaded again when next requested.
+     */
+    public static void invalidate(){
+
+        mInstance = null;
+    }
+
+    private GenreRegistry(Resources res){
+
+        String[] labels = res.getStringArray(R.array.genres);
+        mCodes = res.getIntArray(R.array.genre_codes);
+
+        if(labels.length != mCodes.length){
+            throw new IllegalStateException("R.array.genres and R.array.genre_codes must be the same length");
+        }
+
+        mLabels = new SparseArray<String>(mCodes.length);
+        mPositions = new SparseIntArray(mCodes.length);
+
+        for(int i = 0; i < mCodes.length; i++){
+            mLabels.put(mCodes[i], labels[i]);
+            mPositions.put(mCodes[i], i);
+        }
+
+        mLabelList = Collections.unmodifiableList(Arrays.asList(labels));
+
+        // All Restaurants is inserted at POSITION_ALL, so filter positions are offset by one
+        List<String> filterLabels = new ArrayList<String>(labels.length + 1);
+        filterLabels.add(POSITION_ALL, res.getString(R.string.all_restaurants));
+        filterLabels.addAll(mLabelList);
+        mFilterLabels = Collections.unmodifiableList(filterLabels);
+    }
+
+    /**
+     * @return unmodifiable list of genre labels, in spinner order
+     */
+    public List<String> getLabels(){
+        return mLabelList;
+    }
+
+    /**
+     * @param position position of genre in spinner
+     * @return code of genre at position
+     */
+    public int getCode(int position){
+        return mCodes[position];
+    }
+
+    /**
+     * @param code genre code
+     * @return position of genre in spinner, or position of Other if code is unknown
+     */
+    public int getPosition(int code){
+        return mPositions.get(code, mPositions.get(Restaurant.GENRE_OTHER));
+    }
+
+    /**
+     * @param code genre code
+     * @return label of genre, or label of Other if code is unknown
+     */
+    public String getLabel(int code){
+        return mLabels.get(code, mLabels.get(Restaurant.GENRE_OTHER));
+    }
+
+    /**
+     * @return unmodifiable list of labels used for filtering. Includes all genres, plus All Restaurants at POSITION_ALL.
+     */
+    public List<String> getFilterLabels(){
+        return mFilterLabels;
+    }
+
+    /**
+     * @param position position in list of filter labels
+     * @return code of genre to filter by, or Restaurant.GENRE_ALL for no filtering
+     */
+    public int getFilterCode(int position){
+        return (position == POSITION_ALL) ? Restaurant.GENRE_ALL : mCodes[position - 1];
+    }
+}
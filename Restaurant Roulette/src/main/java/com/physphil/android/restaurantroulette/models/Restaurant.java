@@ -21,13 +21,7 @@
 
 package com.physphil.android.restaurantroulette.models;
 
-import android.content.Context;
-
-import com.physphil.android.restaurantroulette.R;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.Date;
 import java.util.UUID;
 
 /**
@@ -35,36 +29,65 @@ import java.util.UUID;
  */
 public class Restaurant {
 
+    // Genre codes stored in database. Must match R.array.genre_codes, and must never change or be reused.
+    // GENRE_ALL is never stored, and is used to mean no genre filter.
     public static final int GENRE_ALL = 0;
-    public static final String GENRE_NORTH_AMERICAN = "North American";
-    public static final String GENRE_BREAKFAST = "Breakfast";
-    public static final String GENRE_CHINESE = "Chinese";
-    public static final String GENRE_ETHNIC = "Ethnic";
-    public static final String GENRE_FAST_FOOD = "Fast Food";
-    public static final String GENRE_INDIAN = "Indian";
-    public static final String GENRE_ITALIAN = "Italian";
-    public static final String GENRE_JAPANESE = "Japanese";
-    public static final String GENRE_MEXICAN = "Mexican";
-    public static final String GENRE_OTHER = "Other";
-    public static final String GENRE_PIZZA = "Pizza";
-    public static final String GENRE_PUB = "Pub";
-    public static final String GENRE_SEAFOOD = "Seafood";
-    public static final String GENRE_SUSHI = "Sushi";
-    public static final String GENRE_VEGETARIAN = "Vegetarian";
+    public static final int GENRE_BREAKFAST = 1;
+    public static final int GENRE_CHINESE = 2;
+    public static final int GENRE_ETHNIC = 3;
+    public static final int GENRE_FAST_FOOD = 4;
+    public static final int GENRE_INDIAN = 5;
+    public static final int GENRE_ITALIAN = 6;
+    public static final int GENRE_JAPANESE = 7;
+    public static final int GENRE_MEXICAN = 8;
+    public static final int GENRE_NORTH_AMERICAN = 9;
+    public static final int GENRE_PIZZA = 10;
+    public static final int GENRE_PUB = 11;
+    public static final int GENRE_SEAFOOD = 12;
+    public static final int GENRE_SUSHI = 13;
+    public static final int GENRE_VEGETARIAN = 14;
+    public static final int GENRE_OTHER = 15;
     
     private String id;
     private String name;
-    private String genre;
+    private int genre;
     private int userRating;
     private int priceLevel;
     private String notes;
+    private int visitCount;
+    private Date lastVisit;
 
     public Restaurant(){
 
         this.id = UUID.randomUUID().toString();
     }
 
-    public Restaurant(String name, String genre, int userRating, int priceLevel){
+    /**
+     * Create restaurant with an existing id, such as one read from the database
+     * @param id restaurant id
+     */
+    public Restaurant(String id){
+
+        this.id = id;
+    }
+
+    /**
+     * Create copy of restaurant, with the same id
+     * @param other restaurant to copy
+     */
+    public Restaurant(Restaurant other){
+
+        this.id = other.id;
+        this.name = other.name;
+        this.genre = other.genre;
+        this.userRating = other.userRating;
+        this.priceLevel = other.priceLevel;
+        this.notes = other.notes;
+        this.visitCount = other.visitCount;
+        this.lastVisit = (other.lastVisit != null) ? new Date(other.lastVisit.getTime()) : null;
+    }
+
+    public Restaurant(String name, int genre, int userRating, int priceLevel){
 
         this.id = UUID.randomUUID().toString();
         this.name = name;
@@ -73,7 +96,7 @@ public class Restaurant {
         this.priceLevel = priceLevel;
     }
 
-    public Restaurant(String name, String genre, int userRating, int priceLevel, String notes){
+    public Restaurant(String name, int genre, int userRating, int priceLevel, String notes){
 
         this.id = UUID.randomUUID().toString();
         this.name = name;
@@ -99,11 +122,14 @@ public class Restaurant {
         this.name = name;
     }
 
-    public String getGenre() {
+    /**
+     * @return genre code, one of the GENRE_ constants
+     */
+    public int getGenre() {
         return genre;
     }
 
-    public void setGenre(String genre) {
+    public void setGenre(int genre) {
         this.genre = genre;
     }
 
@@ -132,16 +158,46 @@ public class Restaurant {
     }
 
     /**
-     * Get list of genres used for filtering. Includes all listed genres, plus All Restaurants inserted at position 0.
-     * @param context context
-     * @return  list of genres to be used for filtering
+     * @return number of times restaurant has been selected
      */
-    public static List<String> getGenresForAdapter(Context context){
+    public int getVisitCount(){
+        return visitCount;
+    }
+
+    public void setVisitCount(int visitCount){
+        this.visitCount = visitCount;
+    }
+
+    /**
+     * @return date restaurant was last selected, or null if it has never been selected
+     */
+    public Date getLastVisit(){
+        return lastVisit;
+    }
+
+    public void setLastVisit(Date lastVisit){
+        this.lastVisit = lastVisit;
+    }
+
+    /**
+     * Does restaurant have the same details as another restaurant, ignoring id
+     * @param other restaurant to compare to
+     * @return true if all details are equal
+     */
+    public boolean hasSameContent(Restaurant other){
+
+        return equal(name, other.name) &&
+                genre == other.genre &&
+                userRating == other.userRating &&
+                priceLevel == other.priceLevel &&
+                equal(notes, other.notes) &&
+                visitCount == other.visitCount &&
+                equal(lastVisit, other.lastVisit);
+    }
 
-        List<String> genres = new ArrayList<String>(Arrays.asList(context.getResources().getStringArray(R.array.genres)));
-        genres.add(Restaurant.GENRE_ALL, context.getString(R.string.all_restaurants));
+    private static boolean equal(Object a, Object b){
 
-        return genres;
+        return (a == null) ? (b == null) : a.equals(b);
     }
 
     /**
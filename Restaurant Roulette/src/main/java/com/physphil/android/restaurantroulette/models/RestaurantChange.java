@@ -0,0 +1,221 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.models;
+
+/**
+ * Describes a change made to a restaurant, so components showing it can patch their copy instead of reloading from the database.
+ * Carries the new values of the fields which changed. Posted on the EventBus once the change has been saved.
+ */
+public class RestaurantChange {
+
+    public static final int TYPE_INSERT = 0;
+    public static final int TYPE_UPDATE = 1;
+    public static final int TYPE_DELETE = 2;
+    public static final int TYPE_DELETE_ALL = 3;
+
+    public static final int FIELD_NAME = 1;
+    public static final int FIELD_GENRE = 1 << 1;
+    public static final int FIELD_USER_RATING = 1 << 2;
+    public static final int FIELD_PRICE_LEVEL = 1 << 3;
+    public static final int FIELD_NOTES = 1 << 4;
+    public static final int FIELD_ALL = FIELD_NAME | FIELD_GENRE | FIELD_USER_RATING | FIELD_PRICE_LEVEL | FIELD_NOTES;
+
+    private final int type;
+    private final String restaurantId;
+    private final int fields;
+    private final String name;
+    private final int genre;
+    private final int userRating;
+    private final int priceLevel;
+    private final String notes;
+
+    private RestaurantChange(int type, String restaurantId, int fields, Restaurant values){
+
+        this.type = type;
+        this.restaurantId = restaurantId;
+        this.fields = fields;
+
+        if(values != null){
+            this.name = values.getName();
+            this.genre = values.getGenre();
+            this.userRating = values.getUserRating();
+            this.priceLevel = values.getPriceLevel();
+            this.notes = values.getNotes();
+        }
+        else{
+            this.name = null;
+            this.genre = Restaurant.GENRE_ALL;
+            this.userRating = 0;
+            this.priceLevel = 0;
+            this.notes = null;
+        }
+    }
+
+    /**
+     * @param restaurant restaurant which was added
+     * @return change for a new restaurant, with all fields set
+     */
+    public static RestaurantChange inserted(Restaurant restaurant){
+        return new RestaurantChange(TYPE_INSERT, restaurant.getRestaurantId(), FIELD_ALL, restaurant);
+    }
+
+    /**
+     * @param restaurant restaurant with its new values
+     * @param fields FIELD_ flags of the fields which changed
+     * @return change for an edited restaurant
+     */
+    public static RestaurantChange updated(Restaurant restaurant, int fields){
+        return new RestaurantChange(TYPE_UPDATE, restaurant.getRestaurantId(), fields, restaurant);
+    }
+
+    /**
+     * @param restaurantId id of restaurant which was deleted
+     * @return change for a deleted restaurant
+     */
+    public static RestaurantChange deleted(String restaurantId){
+        return new RestaurantChange(TYPE_DELETE, restaurantId, 0, null);
+    }
+
+    /**
+     * @return change for all restaurants being deleted
+     */
+    public static RestaurantChange deletedAll(){
+        return new RestaurantChange(TYPE_DELETE_ALL, null, 0, null);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return id of changed restaurant, or null if all restaurants were deleted
+     */
+    public String getRestaurantId() {
+        return restaurantId;
+    }
+
+    public int getFields() {
+        return fields;
+    }
+
+    /**
+     * @param field FIELD_ flag
+     * @return true if any of the given fields changed
+     */
+    public boolean hasChanged(int field){
+        return (fields & field) != 0;
+    }
+
+    /**
+     * @param restaurant restaurant to check
+     * @return true if change is to the given restaurant
+     */
+    public boolean affects(Restaurant restaurant){
+        return type == TYPE_DELETE_ALL || restaurant.getRestaurantId().equals(restaurantId);
+    }
+
+    /**
+     * @return new genre, only valid if genre has changed
+     */
+    public int getGenre() {
+        return genre;
+    }
+
+    /**
+     * @return new name, only valid if name has changed
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Copy changed values onto restaurant
+     * @param restaurant restaurant to update
+     */
+    public void applyTo(Restaurant restaurant){
+
+        if(hasChanged(FIELD_NAME)) restaurant.setName(name);
+        if(hasChanged(FIELD_GENRE)) restaurant.setGenre(genre);
+        if(hasChanged(FIELD_USER_RATING)) restaurant.setUserRating(userRating);
+        if(hasChanged(FIELD_PRICE_LEVEL)) restaurant.setPriceLevel(priceLevel);
+        if(hasChanged(FIELD_NOTES)) restaurant.setNotes(notes);
+    }
+
+    /**
+     * @param restaurant restaurant to patch, which isn't modified
+     * @return copy of restaurant with changed values applied
+     */
+    public Restaurant apply(Restaurant restaurant){
+
+        Restaurant patched = new Restaurant(restaurant);
+        applyTo(patched);
+        return patched;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if(this == o){
+            return true;
+        }
+
+        if(!(o instanceof RestaurantChange)){
+            return false;
+        }
+
+        RestaurantChange other = (RestaurantChange) o;
+        return type == other.type &&
+                fields == other.fields &&
+                userRating == other.userRating &&
+                priceLevel == other.priceLevel &&
+                equal(restaurantId, other.restaurantId) &&
+                equal(name, other.name) &&
+                genre == other.genre &&
+                equal(notes, other.notes);
+    }
+
+    @Override
+    public int hashCode() {
+
+        int result = type;
+        result = 31 * result + fields;
+        result = 31 * result + (restaurantId != null ? restaurantId.hashCode() : 0);
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + userRating;
+        return result;
+    }
+
+    private static boolean equal(Object a, Object b){
+
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+    /**
+     * @return new restaurant built from values of an insert, which carries all fields
+     */
+    public Restaurant toRestaurant(){
+
+        Restaurant restaurant = new Restaurant(restaurantId);
+        applyTo(restaurant);
+        return restaurant;
+    }
+}
@@ -21,6 +21,8 @@
 
 package com.physphil.android.restaurantroulette.models;
 
+import com.physphil.android.restaurantroulette.util.DateFormatCache;
+
 import java.util.Date;
 
 /**
@@ -30,6 +32,7 @@ public class RestaurantHistory extends Restaurant{
 
     private int id;
     private Date date;
+    private String displayDate;
 
     /**
      * Create new RestaurantHistory object
@@ -37,11 +40,11 @@ public class RestaurantHistory extends Restaurant{
      * @param date selection date from db, in ms
      * @param restaurant Restaurant object that was selected
      */
-    public RestaurantHistory(int id, String date, Restaurant restaurant){
+    public RestaurantHistory(int id, long date, Restaurant restaurant){
+        super(restaurant.getRestaurantId());
 
         this.id = id;
-        this.date = new Date(Long.parseLong(date));
-        setRestaurantId(restaurant.getRestaurantId());
+        this.date = new Date(date);
         setName(restaurant.getName());
         setGenre(restaurant.getGenre());
         setUserRating(restaurant.getUserRating());
@@ -52,11 +55,30 @@ public class RestaurantHistory extends Restaurant{
      * @param id id from database
      * @param date selection date from db, in ms
      */
-    public RestaurantHistory(int id, String restaurantId, String date){
+    public RestaurantHistory(int id, String restaurantId, long date){
+        super(restaurantId);
 
         this.id = id;
-        setRestaurantId(restaurantId);
-        this.date = new Date(Long.parseLong(date));
+        this.date = new Date(date);
+    }
+
+    /**
+     * Create copy of RestaurantHistory object
+     * @param other history to copy
+     */
+    public RestaurantHistory(RestaurantHistory other){
+        super(other);
+
+        this.id = other.id;
+        this.date = (other.date != null) ? new Date(other.date.getTime()) : null;
+        this.displayDate = other.displayDate;
+    }
+
+    /**
+     * Create empty RestaurantHistory object, to be filled with values read from the database
+     */
+    public RestaurantHistory(){
+        super((String) null);
     }
 
     public int getId() {
@@ -81,6 +103,29 @@ public class RestaurantHistory extends Restaurant{
 
     public void setDate(Date date) {
         this.date = date;
+        this.displayDate = null;
+    }
+
+    @Override
+    public boolean hasSameContent(Restaurant other){
+
+        return (other instanceof RestaurantHistory) &&
+                super.hasSameContent(other) &&
+                date.equals(((RestaurantHistory) other).date);
+    }
+
+    /**
+     * Get selection date formatted for display. The string is formatted once and kept, so rows bound repeatedly
+     * while scrolling don't format it again.
+     * @return formatted selection date
+     */
+    public String getDisplayDate() {
+
+        if(displayDate == null){
+            displayDate = DateFormatCache.formatDate(date);
+        }
+
+        return displayDate;
     }
 
 //    public String getName() {
@@ -29,6 +29,7 @@ import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.FontCache;
 
 import java.util.List;
 
@@ -43,19 +44,19 @@ public class CustomFontArrayAdapter extends ArrayAdapter<String> {
     public CustomFontArrayAdapter(Context context, int resource, List<String> items) {
         super(context, resource, items);
 
-        mTf = Typeface.createFromAsset(context.getAssets(), Constants.FONT_DEFAULT);
+        mTf = FontCache.get(context, Constants.FONT_DEFAULT);
     }
 
     public CustomFontArrayAdapter(Context context, int resource, String[] items){
         super(context, resource, items);
 
-        mTf = Typeface.createFromAsset(context.getAssets(), Constants.FONT_DEFAULT);
+        mTf = FontCache.get(context, Constants.FONT_DEFAULT);
     }
 
     public CustomFontArrayAdapter(Context context, int resource, int textViewResource, String[] items){
         super(context, resource, textViewResource, items);
 
-        mTf = Typeface.createFromAsset(context.getAssets(), Constants.FONT_DEFAULT);
+        mTf = FontCache.get(context, Constants.FONT_DEFAULT);
     }
 
     @Override
@@ -28,6 +28,7 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.FontCache;
 
 /**
  * Created by pshadlyn on 3/18/14.
@@ -45,7 +46,7 @@ public class CustomFontDialogBuilder extends AlertDialog.Builder {
     public AlertDialog show() {
         AlertDialog dialog = super.show();
 
-        Typeface tf = Typeface.createFromAsset(mContext.getAssets(), Constants.FONT_DEFAULT);
+        Typeface tf = FontCache.get(mContext, Constants.FONT_DEFAULT);
         ((Button) dialog.findViewById(android.R.id.button1)).setTypeface(tf);
         ((Button) dialog.findViewById(android.R.id.button2)).setTypeface(tf);
         ((Button) dialog.findViewById(android.R.id.button3)).setTypeface(tf);
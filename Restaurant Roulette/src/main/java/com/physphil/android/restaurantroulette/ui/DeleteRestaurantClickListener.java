@@ -0,0 +1,71 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.ui;
+
+import android.content.Context;
+import android.content.DialogInterface;
+import android.view.View;
+
+import com.physphil.android.restaurantroulette.R;
+import com.physphil.android.restaurantroulette.RestaurantFragment;
+import com.physphil.android.restaurantroulette.util.EventBus;
+
+/**
+ * Click handler for the delete button on restaurant list rows. A single instance is shared by every row; the id of the
+ * restaurant to delete is read from the button's tag, which is set when the row is bound.
+ */
+class DeleteRestaurantClickListener implements View.OnClickListener {
+
+    private Context mContext;
+
+    DeleteRestaurantClickListener(Context context){
+
+        mContext = context;
+    }
+
+    @Override
+    public void onClick(View v) {
+
+        final String restaurantId = (String) v.getTag();
+
+        new CustomFontDialogBuilder(mContext)
+                .setTitle(R.string.dialog_delete_restaurant_title)
+                .setMessage(R.string.dialog_delete_restaurant_message)
+                .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+
+                        // Ask hosting fragment to delete restaurant from database
+                        EventBus.getInstance().post(new RestaurantFragment.DeleteRestaurantEvent(restaurantId));
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, new DialogInterface.OnClickListener() {
+
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        // Do nothing
+                    }
+                })
+                .show();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.ui;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.physphil.android.restaurantroulette.R;
+import com.physphil.android.restaurantroulette.models.GenreRegistry;
+
+import java.util.Map;
+
+/**
+ * Spinner adapter for genre filters, with All Restaurants at GenreRegistry.POSITION_ALL followed by every genre in the GenreRegistry.
+ * Shows the number of restaurants in each genre next to its name.
+ * Genres with no restaurants are greyed out and can't be picked from the drop down. Counts are shown once set.
+ */
+public class GenreFilterAdapter extends CustomFontArrayAdapter {
+
+    private final GenreRegistry mGenres;
+    private Map<Integer, Integer> mCounts;
+    private int mTotal;
+
+    public GenreFilterAdapter(Context context){
+        super(context, android.R.layout.simple_spinner_dropdown_item, GenreRegistry.getInstance(context).getFilterLabels());
+
+        mGenres = GenreRegistry.getInstance(context);
+    }
+
+    /**
+     * @param position position of filter
+     * @return genre code to filter by, or Restaurant.GENRE_ALL for no filtering
+     */
+    public int getGenre(int position){
+        return mGenres.getFilterCode(position);
+    }
+
+    /**
+     * Set number of restaurants in each genre, and update labels
+     * @param counts number of restaurants keyed by genre code, from DatabaseHelper.getGenreCounts
+     */
+    public void setGenreCounts(Map<Integer, Integer> counts){
+
+        mCounts = counts;
+        mTotal = 0;
+
+        for(int count : counts.values()){
+            mTotal += count;
+        }
+
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @param position position of genre
+     * @return number of restaurants shown by filter at position, or -1 if counts haven't been set
+     */
+    public int getRestaurantCount(int position){
+
+        if(mCounts == null){
+            return -1;
+        }
+
+        if(position == GenreRegistry.POSITION_ALL){
+            return mTotal;
+        }
+
+        Integer count = mCounts.get(getGenre(position));
+        return (count != null) ? count : 0;
+    }
+
+    @Override
+    public boolean areAllItemsEnabled() {
+        return false;
+    }
+
+    @Override
+    public boolean isEnabled(int position) {
+        return position == GenreRegistry.POSITION_ALL || getRestaurantCount(position) != 0;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+
+        View v = super.getView(position, convertView, parent);
+        setLabel((TextView) v, position);
+        return v;
+    }
+
+    @Override
+    public View getDropDownView(int position, View convertView, ViewGroup parent) {
+
+        View v = super.getDropDownView(position, convertView, parent);
+        setLabel((TextView) v, position);
+        v.setEnabled(isEnabled(position));
+        return v;
+    }
+
+    private void setLabel(TextView tv, int position){
+
+        int count = getRestaurantCount(position);
+        if(count >= 0){
+            tv.setText(getContext().getString(R.string.genre_with_count, getItem(position), count));
+        }
+    }
+}
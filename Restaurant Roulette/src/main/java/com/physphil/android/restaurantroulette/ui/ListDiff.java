@@ -0,0 +1,226 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.ui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Difference between two snapshots of a list, matched by item key and compared by content. Items which keep their order are
+ * left in place, and only removed, inserted and changed items produce operations. Calculating a diff doesn't touch the
+ * lists passed in, so it can be done off the UI thread and then applied to the adapter's list on the UI thread.
+ */
+public class ListDiff<T> {
+
+    public static final int REMOVE = 0;
+    public static final int INSERT = 1;
+    public static final int CHANGE = 2;
+
+    private final List<Operation<T>> mOperations;
+    private final List<T> mNewList;
+
+    private ListDiff(List<Operation<T>> operations, List<T> newList){
+
+        mOperations = operations;
+        mNewList = newList;
+    }
+
+    /**
+     * Calculate operations which turn old list into new list
+     * @param oldList list currently shown
+     * @param newList list to show
+     * @param callback callback to match and compare items
+     * @return diff from old list to new list
+     */
+    public static <T> ListDiff<T> calculate(List<T> oldList, List<T> newList, ItemCallback<T> callback){
+
+        Map<Object, Integer> oldPositions = new HashMap<Object, Integer>(oldList.size() * 2);
+        for(int i = 0; i < oldList.size(); i++){
+            oldPositions.put(callback.getKey(oldList.get(i)), i);
+        }
+
+        // Old positions of items found in both lists, in new list order
+        int[] common = new int[newList.size()];
+        int commonCount = 0;
+        for(T item : newList){
+            Integer oldPosition = oldPositions.get(callback.getKey(item));
+            if(oldPosition != null){
+                common[commonCount++] = oldPosition;
+            }
+        }
+
+        // Items in the longest run that is in the same order in both lists stay where they are. Others are moved.
+        Set<Integer> kept = longestIncreasingSubsequence(common, commonCount);
+        List<Operation<T>> operations = new ArrayList<Operation<T>>();
+
+        // Remove from the end, so positions of earlier items are unaffected
+        for(int i = oldList.size() - 1; i >= 0; i--){
+            if(!kept.contains(i)){
+                operations.add(new Operation<T>(REMOVE, i, oldList.get(i)));
+            }
+        }
+
+        // List now holds only kept items, in new list order. Fill in the rest from the start.
+        for(int i = 0; i < newList.size(); i++){
+
+            T item = newList.get(i);
+            Integer oldPosition = oldPositions.get(callback.getKey(item));
+
+            if(oldPosition == null || !kept.contains(oldPosition)){
+                operations.add(new Operation<T>(INSERT, i, item));
+            }
+            else if(!callback.hasSameContent(oldList.get(oldPosition), item)){
+                operations.add(new Operation<T>(CHANGE, i, item));
+            }
+        }
+
+        return new ListDiff<T>(operations, newList);
+    }
+
+    /**
+     * Find longest increasing subsequence of values, using patience sorting
+     * @param values values
+     * @param count number of values to use from start of array
+     * @return values in longest increasing subsequence
+     */
+    private static Set<Integer> longestIncreasingSubsequence(int[] values, int count){
+
+        // tails[k] is the index of the smallest value ending an increasing run of length k + 1
+        int[] tails = new int[count];
+        int[] previous = new int[count];
+        int length = 0;
+
+        for(int i = 0; i < count; i++){
+
+            int low = 0;
+            int high = length;
+            while(low < high){
+                int mid = (low + high) >>> 1;
+                if(values[tails[mid]] < values[i]){
+                    low = mid + 1;
+                }
+                else{
+                    high = mid;
+                }
+            }
+
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if(low == length){
+                length++;
+            }
+        }
+
+        Set<Integer> result = new HashSet<Integer>(length * 2);
+        for(int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]){
+            result.add(values[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Apply operations to list, which must hold the same items as the old list the diff was calculated from
+     * @param list list to update
+     */
+    public void applyTo(List<T> list){
+
+        for(Operation<T> operation : mOperations){
+
+            switch(operation.type){
+
+                case REMOVE:
+                    list.remove(operation.position);
+                    break;
+
+                case INSERT:
+                    list.add(operation.position, operation.item);
+                    break;
+
+                case CHANGE:
+                    list.set(operation.position, operation.item);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return true if lists have the same items with the same content, in the same order
+     */
+    public boolean isEmpty(){
+        return mOperations.isEmpty();
+    }
+
+    /**
+     * @return operations, in the order they must be applied
+     */
+    public List<Operation<T>> getOperations(){
+        return mOperations;
+    }
+
+    /**
+     * @return new list the diff was calculated to
+     */
+    public List<T> getNewList(){
+        return mNewList;
+    }
+
+    /**
+     * Single change to a list
+     */
+    public static class Operation<T> {
+
+        public final int type;
+        public final int position;
+        public final T item;
+
+        Operation(int type, int position, T item){
+
+            this.type = type;
+            this.position = position;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Matches and compares items of the lists being diffed
+     */
+    public static interface ItemCallback<T> {
+
+        /**
+         * @param item item
+         * @return key identifying item in both lists
+         */
+        public Object getKey(T item);
+
+        /**
+         * @param oldItem item from old list
+         * @param newItem item from new list with the same key
+         * @return true if item would be shown the same way
+         */
+        public boolean hasSameContent(T oldItem, T newItem);
+    }
+}
@@ -23,6 +23,8 @@ package com.physphil.android.restaurantroulette.ui;
 
 import android.content.Context;
 import android.graphics.Typeface;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -31,34 +33,341 @@ import android.widget.RatingBar;
 import android.widget.TextView;
 
 import com.physphil.android.restaurantroulette.R;
+import com.physphil.android.restaurantroulette.data.DatabaseHelper;
+import com.physphil.android.restaurantroulette.models.GenreRegistry;
+import com.physphil.android.restaurantroulette.models.RestaurantChange;
 import com.physphil.android.restaurantroulette.models.RestaurantHistory;
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.FontCache;
 
-import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Adapter for selection history which holds a bounded window of pages in memory. Pages are loaded through a PageLoader as
+ * rows are shown, and the next page is requested once the user scrolls near the end of the loaded rows.
  * Created by pshadlyn on 2/25/14.
  */
 public class RestaurantHistoryListAdapter extends BaseAdapter {
 
+    public static final int PAGE_SIZE = DatabaseHelper.HISTORY_PAGE_SIZE;
+
+    /**
+     * Matches history rows by id when diffing pages
+     */
+    public static final ListDiff.ItemCallback<RestaurantHistory> DIFF_CALLBACK = new ListDiff.ItemCallback<RestaurantHistory>() {
+
+        @Override
+        public Object getKey(RestaurantHistory item) {
+            return item.getId();
+        }
+
+        @Override
+        public boolean hasSameContent(RestaurantHistory oldItem, RestaurantHistory newItem) {
+            return oldItem.hasSameContent(newItem);
+        }
+    };
+
+    // Number of rows from the end at which the next page is requested
+    private static final int PREFETCH_DISTANCE = 10;
+
+    // Maximum number of pages kept in memory. Pages furthest from the one last loaded are dropped first.
+    private static final int MAX_RESIDENT_PAGES = 5;
+
     private Context mContext;
-    private List<RestaurantHistory> mHistory;
+    private GenreRegistry mGenres;
+    private PageLoader mLoader;
+
+    // Row count, and first and last row, of every page loaded so far. The last row is the key used to load the following
+    // page. A page is reloaded between its first and last row as first loaded, so its bounds never move.
+    private final List<Integer> mPageSizes = new ArrayList<Integer>();
+    private final List<RestaurantHistory> mPageStarts = new ArrayList<RestaurantHistory>();
+    private final List<RestaurantHistory> mPageEnds = new ArrayList<RestaurantHistory>();
+
+    private final SparseArray<List<RestaurantHistory>> mPages = new SparseArray<List<RestaurantHistory>>();
+    private final SparseBooleanArray mRequested = new SparseBooleanArray();
 
-    public RestaurantHistoryListAdapter(Context context, List<RestaurantHistory> history){
+    // Pages whose request was already in flight when rows changed, so must be requested again once it is delivered
+    private final SparseBooleanArray mStale = new SparseBooleanArray();
+    private int mCount;
+    private boolean mEndReached;
+
+    public RestaurantHistoryListAdapter(Context context, PageLoader loader){
 
         mContext = context;
-        mHistory = history;
+        mGenres = GenreRegistry.getInstance(context);
+        mLoader = loader;
+    }
+
+    /**
+     * Drop all pages and start loading again from the most recent selection
+     */
+    public void reset(){
+
+        mPageSizes.clear();
+        mPageStarts.clear();
+        mPageEnds.clear();
+        mPages.clear();
+        mRequested.clear();
+        mStale.clear();
+        mCount = 0;
+        mEndReached = false;
+        notifyDataSetChanged();
+
+        requestPage(0);
+    }
+
+    /**
+     * Drop all pages without loading any more, for when history has been cleared
+     */
+    public void clear(){
+
+        mPageSizes.clear();
+        mPageStarts.clear();
+        mPageEnds.clear();
+        mPages.clear();
+        mRequested.clear();
+        mStale.clear();
+        mCount = 0;
+        mEndReached = true;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Forget about page requests which were cancelled before being delivered, so they can be requested again. Pages
+     * which were stale stay marked, and are reloaded by {@link #requestMissingPages()}.
+     */
+    public void cancelRequests(){
+
+        mRequested.clear();
+    }
+
+    /**
+     * Reload all resident pages, e.g. after restaurant details have changed. Rows stay in place while pages reload, and
+     * only pages which have changed are updated.
+     */
+    public void refresh(){
+
+        markRequestsStale();
+
+        for(int i = 0; i < mPages.size(); i++){
+            requestPage(mPages.keyAt(i));
+        }
+    }
+
+    /**
+     * Mark pages with a request in flight as stale, as their query may have run before rows changed
+     */
+    private void markRequestsStale(){
+
+        for(int i = 0; i < mRequested.size(); i++){
+            mStale.put(mRequested.keyAt(i), true);
+        }
+    }
+
+    /**
+     * Patch resident rows for a changed restaurant. Rows of a deleted restaurant are removed by reloading resident pages,
+     * so page sizes stay correct.
+     * @param change change to restaurant
+     */
+    public void applyChange(RestaurantChange change){
+
+        switch(change.getType()){
+
+            case RestaurantChange.TYPE_DELETE_ALL:
+                clear();
+                break;
+
+            case RestaurantChange.TYPE_DELETE:
+                refresh();
+                break;
+
+            case RestaurantChange.TYPE_UPDATE:
+
+                if(!change.hasChanged(RestaurantChange.FIELD_NAME | RestaurantChange.FIELD_GENRE | RestaurantChange.FIELD_USER_RATING)){
+                    return;
+                }
+
+                // Rows are replaced with patched copies rather than modified, as the PageLoader may be diffing
+                // against the same objects in the background
+                boolean changed = false;
+                for(int i = 0; i < mPages.size(); i++){
+
+                    List<RestaurantHistory> rows = mPages.valueAt(i);
+                    for(int j = 0; j < rows.size(); j++){
+
+                        if(change.affects(rows.get(j))){
+                            RestaurantHistory patched = new RestaurantHistory(rows.get(j));
+                            change.applyTo(patched);
+                            rows.set(j, patched);
+                            changed = true;
+                        }
+                    }
+                }
+
+                if(changed){
+                    markRequestsStale();
+                    notifyDataSetChanged();
+                }
+                break;
+        }
+    }
+
+    /**
+     * Request any page needed to show the current rows, after requests were cancelled
+     */
+    public void requestMissingPages(){
+
+        // Reload pages which were stale when their requests were cancelled
+        for(int i = 0; i < mStale.size(); i++){
+
+            int page = mStale.keyAt(i);
+            if(page < mPageSizes.size()){
+                requestPage(page);
+            }
+        }
+
+        mStale.clear();
+
+        if(mPageSizes.isEmpty() && !mEndReached){
+            requestPage(0);
+        }
+        else{
+            // Rebinding visible rows requests any pages which are not resident
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Deliver a page requested from the PageLoader
+     * @param page page number
+     * @param diff diff from the rows passed to the PageLoader to the rows now in the page
+     */
+    public void setPage(int page, ListDiff<RestaurantHistory> diff){
+
+        mRequested.delete(page);
+        boolean stale = mStale.get(page);
+        mStale.delete(page);
+
+        applyPage(page, diff);
+
+        // Rows changed while page was loading, so its rows may already be out of date
+        if(stale && page < mPageSizes.size()){
+            requestPage(page);
+        }
+    }
+
+    /**
+     * Update page with rows delivered from the PageLoader
+     * @param page page number
+     * @param diff diff from the rows passed to the PageLoader to the rows now in the page
+     */
+    private void applyPage(int page, ListDiff<RestaurantHistory> diff){
+
+        List<RestaurantHistory> rows = diff.getNewList();
+
+        if(page < mPageSizes.size()){
+
+            // Reloaded page. It is bounded by its first and last row as first loaded, so rows may have been removed since
+            // then but never added. Selections made since then come before page 0's first row, so they are not shown until reset.
+            List<RestaurantHistory> resident = mPages.get(page);
+            if(resident != null){
+
+                // Page was still resident, so diff applies to it. Resident pages only change size here, and a page is never requested twice at once.
+                if(diff.isEmpty()){
+                    return;
+                }
+
+                diff.applyTo(resident);
+                rows = resident;
+            }
+
+            mCount += rows.size() - mPageSizes.get(page);
+            mPageSizes.set(page, rows.size());
+            mPages.put(page, rows);
+        }
+        else if(page == mPageSizes.size()){
+
+            if(rows.isEmpty()){
+                mEndReached = true;
+            }
+            else{
+                mPageSizes.add(rows.size());
+                mPageStarts.add(rows.get(0));
+                mPageEnds.add(rows.get(rows.size() - 1));
+                mPages.put(page, rows);
+                mCount += rows.size();
+                mEndReached = rows.size() < PAGE_SIZE;
+            }
+        }
+        else{
+            // Page no longer follows on from loaded pages, so it is out of date
+            return;
+        }
+
+        evictPages(page);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Drop resident pages furthest from the given page until within the maximum
+     * @param page page to keep pages around
+     */
+    private void evictPages(int page){
+
+        while(mPages.size() > MAX_RESIDENT_PAGES){
+
+            int furthest = mPages.keyAt(0);
+            int last = mPages.keyAt(mPages.size() - 1);
+            if(Math.abs(last - page) > Math.abs(furthest - page)){
+                furthest = last;
+            }
+
+            mPages.remove(furthest);
+        }
+    }
+
+    private void requestPage(int page){
+
+        if(mRequested.get(page)){
+            return;
+        }
+
+        mRequested.put(page, true);
+        RestaurantHistory after = page > 0 ? mPageEnds.get(page - 1) : null;
+        RestaurantHistory from = page < mPageStarts.size() ? mPageStarts.get(page) : null;
+        RestaurantHistory until = page < mPageEnds.size() ? mPageEnds.get(page) : null;
+        List<RestaurantHistory> resident = mPages.get(page);
+        List<RestaurantHistory> current = (resident != null) ? new ArrayList<RestaurantHistory>(resident) : new ArrayList<RestaurantHistory>();
+        mLoader.loadPage(page, after, from, until, current);
     }
 
     @Override
     public int getCount() {
-        return mHistory.size();
+        return mCount;
     }
 
+    /**
+     * Get history at position
+     * @param position position in list
+     * @return RestaurantHistory at position, or null if its page is not currently loaded
+     */
     @Override
-    public Object getItem(int position) {
-        return mHistory.get(position);
+    public RestaurantHistory getItem(int position) {
+
+        int page = 0;
+        while(position >= mPageSizes.get(page)){
+            position -= mPageSizes.get(page);
+            page++;
+        }
+
+        List<RestaurantHistory> rows = mPages.get(page);
+        if(rows == null){
+            requestPage(page);
+            return null;
+        }
+
+        return rows.get(position);
     }
 
     @Override
@@ -69,31 +378,80 @@ public class RestaurantHistoryListAdapter extends BaseAdapter {
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
 
-        RestaurantHistory history = mHistory.get(position);
+        RestaurantHistory history = getItem(position);
+
+        if(!mEndReached && position >= mCount - PREFETCH_DISTANCE){
+            requestPage(mPageSizes.size());
+        }
+
+        ViewHolder holder;
 
         if(convertView == null){
             LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             convertView = inflater.inflate(R.layout.row_history_list, parent, false);
+
+            holder = new ViewHolder(convertView, FontCache.get(mContext, Constants.FONT_DEFAULT));
+            convertView.setTag(holder);
+        }
+        else{
+            holder = (ViewHolder) convertView.getTag();
+        }
+
+        if(history == null){
+            // Page is loading, show empty row until it arrives
+            holder.tvName.setText(null);
+            holder.tvGenre.setText(null);
+            holder.rbRating.setRating(0);
+            holder.tvDate.setText(null);
+            return convertView;
         }
 
-        TextView tvName = (TextView) convertView.findViewById(R.id.history_name);
-        TextView tvGenre = (TextView) convertView.findViewById(R.id.history_genre);
-        RatingBar rbRating = (RatingBar) convertView.findViewById(R.id.history_rating);
-        TextView tvDate = (TextView) convertView.findViewById(R.id.history_date);
-        Typeface tf = Typeface.createFromAsset(mContext.getAssets(), Constants.FONT_DEFAULT);
+        holder.tvName.setText(history.getName());
+        holder.tvGenre.setText(mGenres.getLabel(history.getGenre()));
+        holder.rbRating.setRating(history.getUserRating());
 
-        tvName.setText(history.getName());
-        tvName.setTypeface(tf);
+        holder.tvDate.setText(history.getDisplayDate());
 
-        tvGenre.setText(history.getGenre());
-        tvGenre.setTypeface(tf);
+        return convertView;
+    }
 
-        rbRating.setRating(history.getUserRating());
+    /**
+     * Views of a row, found once when the row is inflated and reused each time it is bound
+     */
+    private static class ViewHolder {
 
-        DateFormat df = DateFormat.getDateInstance();
-        tvDate.setText(df.format(history.getDate()));
-        tvDate.setTypeface(tf);
+        final TextView tvName;
+        final TextView tvGenre;
+        final RatingBar rbRating;
+        final TextView tvDate;
 
-        return convertView;
+        ViewHolder(View row, Typeface font){
+
+            tvName = (TextView) row.findViewById(R.id.history_name);
+            tvGenre = (TextView) row.findViewById(R.id.history_genre);
+            rbRating = (RatingBar) row.findViewById(R.id.history_rating);
+            tvDate = (TextView) row.findViewById(R.id.history_date);
+
+            tvName.setTypeface(font);
+            tvGenre.setTypeface(font);
+            tvDate.setTypeface(font);
+        }
+    }
+
+    /**
+     * Loads pages of history for the adapter. Pages are delivered back to the adapter with setPage(), as a diff from the
+     * rows the adapter currently holds for the page.
+     */
+    public static interface PageLoader {
+
+        /**
+         * Load a page of history, sorted by date then id in descending order
+         * @param page page number
+         * @param after last row of previous page, or null for the first page
+         * @param from first row of this page if it was loaded before, or null
+         * @param until last row of this page if it was loaded before, or null to load a full page
+         * @param current copy of rows currently held for this page, empty if not resident
+         */
+        public void loadPage(int page, RestaurantHistory after, RestaurantHistory from, RestaurantHistory until, List<RestaurantHistory> current);
     }
 }
@@ -22,10 +22,7 @@
 package com.physphil.android.restaurantroulette.ui;
 
 import android.content.Context;
-import android.content.DialogInterface;
-import android.content.Intent;
 import android.graphics.Typeface;
-import android.support.v4.content.LocalBroadcastManager;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -35,24 +32,61 @@ import android.widget.RatingBar;
 import android.widget.TextView;
 
 import com.physphil.android.restaurantroulette.R;
-import com.physphil.android.restaurantroulette.RestaurantFragment;
+import com.physphil.android.restaurantroulette.models.GenreRegistry;
 import com.physphil.android.restaurantroulette.models.Restaurant;
 import com.physphil.android.restaurantroulette.util.Constants;
+import com.physphil.android.restaurantroulette.util.FontCache;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by pshadlyn on 2/25/14.
  */
 public class RestaurantListAdapter extends BaseAdapter {
 
+    /**
+     * Version for a snapshot taken before any adapter existed, which never matches an adapter's version
+     */
+    public static final int NO_VERSION = -1;
+
+    /**
+     * Matches restaurants by id when diffing lists
+     */
+    public static final ListDiff.ItemCallback<Restaurant> DIFF_CALLBACK = new ListDiff.ItemCallback<Restaurant>() {
+
+        @Override
+        public Object getKey(Restaurant item) {
+            return item.getRestaurantId();
+        }
+
+        @Override
+        public boolean hasSameContent(Restaurant oldItem, Restaurant newItem) {
+            return oldItem.hasSameContent(newItem);
+        }
+    };
+
     private Context mContext;
+    private GenreRegistry mGenres;
     private List<Restaurant> mRestaurants;
+    private View.OnClickListener mDeleteListener;
+
+    // Position of restaurant ids in mRestaurants. Only entries below mPositionsValidTo are known to be correct. A change
+    // at a position invalidates entries from there on, and they are indexed again as far as needed by the next lookup.
+    private final Map<String, Integer> mPositions = new HashMap<String, Integer>();
+    private int mPositionsValidTo;
+
+    // Incremented each time the list changes, to detect changes made while a diff was being calculated
+    private int mVersion;
 
     public RestaurantListAdapter(Context context, List<Restaurant> restaurants){
 
         mContext = context;
-        mRestaurants = restaurants;
+        mGenres = GenreRegistry.getInstance(context);
+        mRestaurants = new ArrayList<Restaurant>(restaurants);
+        mDeleteListener = new DeleteRestaurantClickListener(context);
     }
 
     @Override
@@ -61,68 +95,237 @@ public class RestaurantListAdapter extends BaseAdapter {
     }
 
     @Override
-    public Object getItem(int position) {
+    public Restaurant getItem(int position) {
         return mRestaurants.get(position);
     }
 
     @Override
     public long getItemId(int position) {
-        return position;
+        return getStableId(mRestaurants.get(position).getRestaurantId());
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+
+        mVersion++;
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * @return copy of restaurants currently in list, to calculate a diff against
+     */
+    public List<Restaurant> getSnapshot(){
+        return new ArrayList<Restaurant>(mRestaurants);
+    }
+
+    /**
+     * @return version of list, which changes whenever the list is changed
+     */
+    public int getVersion(){
+        return mVersion;
+    }
+
+    /**
+     * Update list with a diff calculated from a snapshot. If the list has changed since the snapshot was taken the diff
+     * no longer applies, and the list is replaced with the diff's new list instead.
+     * @param diff diff from snapshot to new list
+     * @param version version of list when snapshot was taken
+     */
+    public void apply(ListDiff<Restaurant> diff, int version){
+
+        if(version != mVersion){
+            mRestaurants.clear();
+            mRestaurants.addAll(diff.getNewList());
+        }
+        else if(diff.isEmpty()){
+            return;
+        }
+        else{
+            diff.applyTo(mRestaurants);
+        }
+
+        invalidatePositions();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Get position of restaurant in list
+     * @param restaurantId id of restaurant to find
+     * @return position of restaurant, or -1 if not in list
+     */
+    public int getPosition(String restaurantId){
+
+        Integer position = mPositions.get(restaurantId);
+        if(position != null && position < mPositionsValidTo){
+            return position;
+        }
+
+        // Index positions which may have moved, until restaurant is found
+        while(mPositionsValidTo < mRestaurants.size()){
+
+            int i = mPositionsValidTo++;
+            String id = mRestaurants.get(i).getRestaurantId();
+            mPositions.put(id, i);
+
+            if(id.equals(restaurantId)){
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Invalidate indexed positions from position onwards, after restaurants there have moved
+     * @param position first position which has changed
+     */
+    private void invalidatePositions(int position){
+
+        mPositionsValidTo = Math.min(mPositionsValidTo, position);
+    }
+
+    /**
+     * Drop all indexed positions, after the whole list has changed
+     */
+    private void invalidatePositions(){
+
+        mPositions.clear();
+        mPositionsValidTo = 0;
+    }
+
+    /**
+     * Remove restaurant from list and refresh
+     * @param restaurantId id of restaurant to remove
+     * @return true if restaurant was in list
+     */
+    public boolean remove(String restaurantId){
+
+        int position = getPosition(restaurantId);
+        if(position < 0){
+            return false;
+        }
+
+        mRestaurants.remove(position);
+        mPositions.remove(restaurantId);
+        invalidatePositions(position);
+        notifyDataSetChanged();
+        return true;
+    }
+
+    /**
+     * Add restaurant to list in alphabetical order, replacing it if already in list, and refresh
+     * @param restaurant restaurant to add
+     */
+    public void put(Restaurant restaurant){
+
+        int position = getPosition(restaurant.getRestaurantId());
+        if(position >= 0){
+            mRestaurants.remove(position);
+            invalidatePositions(position);
+        }
+
+        // Find position after all restaurants with names sorting before or equal to this one
+        int low = 0;
+        int high = mRestaurants.size();
+        while(low < high){
+            int mid = (low + high) >>> 1;
+            if(compareNames(mRestaurants.get(mid).getName(), restaurant.getName()) <= 0){
+                low = mid + 1;
+            }
+            else{
+                high = mid;
+            }
+        }
+
+        mRestaurants.add(low, restaurant);
+        invalidatePositions(low);
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Compare names the same way the database sorts them, ignoring case with empty names first
+     */
+    private static int compareNames(String a, String b){
+
+        return String.CASE_INSENSITIVE_ORDER.compare(a != null ? a : "", b != null ? b : "");
+    }
+
+    /**
+     * Remove all restaurants from list and refresh
+     */
+    public void clear(){
+
+        mRestaurants.clear();
+        invalidatePositions();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Get id for a restaurant which stays the same while the list changes, so the list view can keep its state across updates.
+     * Restaurant ids are UUID strings, so a 64-bit hash of the string is unique in practice.
+     * @param restaurantId restaurant id
+     * @return stable item id
+     */
+    public static long getStableId(String restaurantId){
+
+        long hash = 1125899906842597L;
+        for(int i = 0; i < restaurantId.length(); i++){
+            hash = 31 * hash + restaurantId.charAt(i);
+        }
+
+        return hash;
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
 
-        final Restaurant restaurant = mRestaurants.get(position);
+        Restaurant restaurant = mRestaurants.get(position);
+        ViewHolder holder;
 
         if(convertView == null){
             LayoutInflater inflater = (LayoutInflater) mContext.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
             convertView = inflater.inflate(R.layout.row_restaurant_list, parent, false);
+
+            holder = new ViewHolder(convertView, FontCache.get(mContext, Constants.FONT_DEFAULT));
+            holder.btnDelete.setOnClickListener(mDeleteListener);
+            convertView.setTag(holder);
+        }
+        else{
+            holder = (ViewHolder) convertView.getTag();
         }
 
-        TextView tvName = (TextView) convertView.findViewById(R.id.restaurant_name);
-        TextView tvGenre = (TextView) convertView.findViewById(R.id.restaurant_genre);
-        RatingBar rbRating = (RatingBar) convertView.findViewById(R.id.restaurant_rating);
-        ImageButton btnDelete = (ImageButton) convertView.findViewById(R.id.restaurant_delete_button);
-        Typeface defaultFont = Typeface.createFromAsset(mContext.getAssets(), Constants.FONT_DEFAULT);
-
-        tvName.setText(restaurant.getName());
-        tvName.setTypeface(defaultFont);
-        tvGenre.setText(restaurant.getGenre());
-        tvGenre.setTypeface(defaultFont);
-        rbRating.setRating(restaurant.getUserRating());
-
-        btnDelete.setOnClickListener(new View.OnClickListener() {
-
-            @Override
-            public void onClick(View v) {
-
-//                new AlertDialog.Builder(mContext)
-                new CustomFontDialogBuilder(mContext)
-                        .setTitle(R.string.dialog_delete_restaurant_title)
-                        .setMessage(R.string.dialog_delete_restaurant_message)
-                        .setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
-
-                            @Override
-                            public void onClick(DialogInterface dialog, int which) {
-
-                                // Send broadcast to hosting fragment to delete restaurant from database
-                                Intent i = new Intent(RestaurantFragment.ACTION_DELETE_RESTAURANT);
-                                i.putExtra(RestaurantFragment.EXTRA_RESTAURANT_ID, restaurant.getRestaurantId());
-                                LocalBroadcastManager.getInstance(mContext).sendBroadcast(i);
-                            }
-                        })
-                        .setNegativeButton(android.R.string.cancel, new DialogInterface.OnClickListener() {
-
-                            @Override
-                            public void onClick(DialogInterface dialog, int which) {
-                                // Do nothing
-                            }
-                        })
-                        .show();
-            }
-        });
+        holder.tvName.setText(restaurant.getName());
+        holder.tvGenre.setText(mGenres.getLabel(restaurant.getGenre()));
+        holder.rbRating.setRating(restaurant.getUserRating());
+        holder.btnDelete.setTag(restaurant.getRestaurantId());
 
         return convertView;
     }
+
+    /**
+     * Views of a row, found once when the row is inflated and reused each time it is bound
+     */
+    private static class ViewHolder {
+
+        final TextView tvName;
+        final TextView tvGenre;
+        final RatingBar rbRating;
+        final ImageButton btnDelete;
+
+        ViewHolder(View row, Typeface font){
+
+            tvName = (TextView) row.findViewById(R.id.restaurant_name);
+            tvGenre = (TextView) row.findViewById(R.id.restaurant_genre);
+            rbRating = (RatingBar) row.findViewById(R.id.restaurant_rating);
+            btnDelete = (ImageButton) row.findViewById(R.id.restaurant_delete_button);
+
+            tvName.setTypeface(font);
+            tvGenre.setTypeface(font);
+        }
+    }
 }
@@ -0,0 +1,87 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.util;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Cache of the default date format for the current locale. DateFormat isn't thread-safe, so each thread keeps its own
+ * instance, which is rebuilt when the locale changes or the cache is invalidated.
+ */
+public class DateFormatCache {
+
+    private static volatile int mGeneration;
+
+    private static final ThreadLocal<CachedFormat> mFormat = new ThreadLocal<CachedFormat>();
+
+    /**
+     * Format date with the default date format for the current locale
+     * @param date date to format
+     * @return formatted date
+     */
+    public static String formatDate(Date date){
+
+        return getDateFormat().format(date);
+    }
+
+    /**
+     * Get default date format for the current locale. The format belongs to the calling thread and must not be shared.
+     * @return date format
+     */
+    public static DateFormat getDateFormat(){
+
+        Locale locale = Locale.getDefault();
+        int generation = mGeneration;
+        CachedFormat cached = mFormat.get();
+
+        if(cached == null || cached.generation != generation || !cached.locale.equals(locale)){
+            cached = new CachedFormat(DateFormat.getDateInstance(DateFormat.DEFAULT, locale), locale, generation);
+            mFormat.set(cached);
+        }
+
+        return cached.format;
+    }
+
+    /**
+     * Drop cached formats on all threads, e.g. when the configuration changes
+     */
+    public static void invalidate(){
+
+        mGeneration++;
+    }
+
+    private static class CachedFormat {
+
+        final DateFormat format;
+        final Locale locale;
+        final int generation;
+
+        CachedFormat(DateFormat format, Locale locale, int generation){
+
+            this.format = format;
+            this.locale = locale;
+            this.generation = generation;
+        }
+    }
+}
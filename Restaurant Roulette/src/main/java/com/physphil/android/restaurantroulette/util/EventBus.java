@@ -0,0 +1,161 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process event bus. Subscribers register for an event class, and events are delivered to them on the main thread.
+ * Events posted before pending events are delivered are queued, and an event equal to one already queued replaces it at
+ * the end of the queue, so a burst of identical events is delivered once, in the position of the latest post.
+ * Event classes should implement equals() and hashCode() to be merged.
+ */
+public class EventBus {
+
+    private static EventBus mInstance;
+
+    private final Map<Class<?>, List<Subscriber<?>>> mSubscribers = new HashMap<Class<?>, List<Subscriber<?>>>();
+    private final LinkedHashSet<Object> mPending = new LinkedHashSet<Object>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private boolean mFlushScheduled;
+
+    private EventBus(){}
+
+    public static synchronized EventBus getInstance(){
+
+        if(mInstance == null){
+            mInstance = new EventBus();
+        }
+
+        return mInstance;
+    }
+
+    /**
+     * Register subscriber for events of a class. Subclasses of the class aren't delivered.
+     * @param type event class
+     * @param subscriber subscriber
+     */
+    public <T> void register(Class<T> type, Subscriber<? super T> subscriber){
+
+        synchronized(mSubscribers){
+
+            List<Subscriber<?>> subscribers = mSubscribers.get(type);
+            if(subscribers == null){
+                subscribers = new CopyOnWriteArrayList<Subscriber<?>>();
+                mSubscribers.put(type, subscribers);
+            }
+
+            if(!subscribers.contains(subscriber)){
+                subscribers.add(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Unregister subscriber from events of a class. It won't receive any event still pending.
+     * @param type event class
+     * @param subscriber subscriber
+     */
+    public void unregister(Class<?> type, Subscriber<?> subscriber){
+
+        synchronized(mSubscribers){
+
+            List<Subscriber<?>> subscribers = mSubscribers.get(type);
+            if(subscribers != null){
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Post event for delivery on the main thread. Can be called from any thread.
+     * @param event event
+     */
+    public void post(Object event){
+
+        synchronized(mPending){
+
+            // Move an equal queued event to the end, so events are delivered in the order they were last posted
+            mPending.remove(event);
+            mPending.add(event);
+
+            if(!mFlushScheduled){
+                mFlushScheduled = true;
+                mHandler.post(mFlush);
+            }
+        }
+    }
+
+    private final Runnable mFlush = new Runnable() {
+
+        @Override
+        public void run() {
+
+            List<Object> events;
+            synchronized(mPending){
+                events = new ArrayList<Object>(mPending);
+                mPending.clear();
+                mFlushScheduled = false;
+            }
+
+            for(Object event : events){
+                deliver(event);
+            }
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private void deliver(Object event){
+
+        List<Subscriber<?>> subscribers;
+        synchronized(mSubscribers){
+            subscribers = mSubscribers.get(event.getClass());
+        }
+
+        if(subscribers == null){
+            return;
+        }
+
+        for(Subscriber<?> subscriber : subscribers){
+
+            // Skip subscribers unregistered by an earlier delivery
+            if(subscribers.contains(subscriber)){
+                ((Subscriber<Object>) subscriber).onEvent(event);
+            }
+        }
+    }
+
+    /**
+     * Receives events of the type it was registered for, on the main thread
+     */
+    public static interface Subscriber<T> {
+        public void onEvent(T event);
+    }
+}
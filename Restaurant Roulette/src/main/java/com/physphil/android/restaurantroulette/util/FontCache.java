@@ -0,0 +1,78 @@
+/**
+ * Restaurant Roulette for Android
+ * Copyright (C) 2014  Phil Shadlyn
+ *
+ * Restaurant Roulette is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * @copyright 2014 Phil Shadlyn - physphil@gmail.com
+ * @license GNU General Public License - https://www.gnu.org/licenses/gpl.html
+ */
+
+package com.physphil.android.restaurantroulette.util;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Process;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of fonts loaded from assets. Each font file is only parsed once, and then shared by every caller.
+ */
+public class FontCache {
+
+    private static final Map<String, Typeface> mFonts = new HashMap<String, Typeface>();
+
+    /**
+     * Get font from assets, loading it the first time it is requested
+     * @param context context
+     * @param font font file name in assets, e.g. Constants.FONT_DEFAULT
+     * @return font
+     */
+    public static Typeface get(Context context, String font){
+
+        synchronized(mFonts){
+
+            Typeface tf = mFonts.get(font);
+            if(tf == null){
+                tf = Typeface.createFromAsset(context.getApplicationContext().getAssets(), font);
+                mFonts.put(font, tf);
+            }
+
+            return tf;
+        }
+    }
+
+    /**
+     * Load all app fonts on a background thread, so they are ready before the first screen is drawn.
+     * A caller asking for a font while it is still loading waits for it rather than loading it again.
+     * @param context context
+     */
+    public static void preload(Context context){
+
+        final Context appContext = context.getApplicationContext();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                get(appContext, Constants.FONT_DEFAULT);
+                get(appContext, Constants.FONT_ROBOTO_THIN);
+            }
+        }, "FontCache").start();
+    }
+}
@@ -22,10 +22,8 @@
 package com.physphil.android.restaurantroulette.util;
 
 import android.content.Context;
-import android.content.Intent;
 import android.location.Location;
 import android.os.Bundle;
-import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
@@ -39,20 +37,13 @@ import com.google.android.gms.location.LocationClient;
  */
 public class LocationHelper implements GooglePlayServicesClient.ConnectionCallbacks, GooglePlayServicesClient.OnConnectionFailedListener {
 
-    public static final String ACTION_LOCATION_RETRIEVED = "com.physphil.android.restaurantroulette.ACTION_LOCATION_RETRIEVED";
-    public static final String ACTION_LOCATION_SERVICES_DISCONNECTED = "com.physphil.android.restaurantroulette.ACTION_LOCATION_SERVICES_DISCONNECTED";
-    public static final String EXTRA_PLAY_SERVICES_AVAILABLE = "com.physphil.android.restaurantroulette.EXTRA_PLAY_SERVICES_CONNECTED";
-    public static final String EXTRA_LOCATION = "com.physphil.android.restaurantroulette.EXTRA_LOCATION";
-
     private Context mContext;
     private Location mLocation;
     private LocationClient mLocationClient;
-    private LocalBroadcastManager mBroadcastManager;
 
     public LocationHelper(Context context){
 
         mContext = context;
-        mBroadcastManager = LocalBroadcastManager.getInstance(mContext);
     }
 
     private boolean googlePlayServicesAvailable(){
@@ -65,9 +56,8 @@ public class LocationHelper implements GooglePlayServicesClient.ConnectionCallba
     }
 
     /**
-     * Connect to Location Services and retrieve location.  Once connected, ACTION_LOCATION_RETRIEVED broadcast is sent
-     * and location info is sent in EXTRA_LOCATION. Boolean EXTRA_PLAY_SERVICES_AVAILABLE contains if Google
-     * Play Services is available on device
+     * Connect to Location Services and retrieve location.  Once connected, a LocationRetrievedEvent is posted with the
+     * location, and whether Google Play Services is available on device
      */
     public void connectAndGetLocation(){
 
@@ -109,13 +99,11 @@ public class LocationHelper implements GooglePlayServicesClient.ConnectionCallba
     }
 
     /**
-     * Google play services not available on device, send broadcast indicating failure
+     * Google play services not available on device, post event indicating failure
      */
     private void sendFailureBroadcast(){
 
-        Intent i = new Intent(ACTION_LOCATION_RETRIEVED);
-        i.putExtra(EXTRA_PLAY_SERVICES_AVAILABLE, false);
-        mBroadcastManager.sendBroadcast(i);
+        EventBus.getInstance().post(new LocationRetrievedEvent(false, null));
     }
 
     // When LocationClient is connected to Location Services
@@ -125,17 +113,14 @@ public class LocationHelper implements GooglePlayServicesClient.ConnectionCallba
         Log.d("PS", "Location Services connected");
         mLocation = mLocationClient.getLastLocation();
 
-        Intent i = new Intent(ACTION_LOCATION_RETRIEVED);
-        i.putExtra(EXTRA_PLAY_SERVICES_AVAILABLE, true);
-        i.putExtra(EXTRA_LOCATION, mLocation);
-        mBroadcastManager.sendBroadcast(i);
+        EventBus.getInstance().post(new LocationRetrievedEvent(true, mLocation));
     }
 
     // When LocationClient disconnects from Location Services
     @Override
     public void onDisconnected() {
         Log.d("PS", "Location Services disconnected");
-        mBroadcastManager.sendBroadcast(new Intent(ACTION_LOCATION_SERVICES_DISCONNECTED));
+        EventBus.getInstance().post(new LocationServicesDisconnectedEvent());
     }
 
     // If connection to LocationServices drops
@@ -143,4 +128,65 @@ public class LocationHelper implements GooglePlayServicesClient.ConnectionCallba
     public void onConnectionFailed(ConnectionResult connectionResult) {
         Log.d("PS", "Location Services connection failed");
     }
+
+    /**
+     * Event posted once location has been retrieved, or failed to be retrieved
+     */
+    public static class LocationRetrievedEvent {
+
+        private final boolean mPlayServicesAvailable;
+        private final Location mLocation;
+
+        LocationRetrievedEvent(boolean playServicesAvailable, Location location){
+
+            mPlayServicesAvailable = playServicesAvailable;
+            mLocation = location;
+        }
+
+        /**
+         * @return if Google Play Services is available on device
+         */
+        public boolean isPlayServicesAvailable(){
+            return mPlayServicesAvailable;
+        }
+
+        /**
+         * @return current location, null if location not available
+         */
+        public Location getLocation(){
+            return mLocation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if(!(o instanceof LocationRetrievedEvent)){
+                return false;
+            }
+
+            LocationRetrievedEvent other = (LocationRetrievedEvent) o;
+            return mPlayServicesAvailable == other.mPlayServicesAvailable && mLocation == other.mLocation;
+        }
+
+        @Override
+        public int hashCode() {
+            return (mPlayServicesAvailable ? 1 : 0) + 31 * System.identityHashCode(mLocation);
+        }
+    }
+
+    /**
+     * Event posted when disconnected from Location Services
+     */
+    public static class LocationServicesDisconnectedEvent {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LocationServicesDisconnectedEvent;
+        }
+
+        @Override
+        public int hashCode() {
+            return LocationServicesDisconnectedEvent.class.hashCode();
+        }
+    }
 }